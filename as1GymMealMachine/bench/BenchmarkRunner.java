@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small benchmark harness for the classes of the machine, kept as an offline fallback for the JMH benchmarks of
+ * the {@code jmh} folder ({@code mvn -B -Pjmh package}), for when Maven cannot download JMH.
+ * <p>
+ * Each benchmark has an untimed setup that builds a fresh state for every operation, so operations that change the
+ * machine (fills and sales) always start from the same situation. States are built in batches, then the operations of
+ * a batch are timed together. After a warm-up phase for the JIT, the average time per operation of a few measurement
+ * iterations is printed with its spread.
+ * <p>
+ * Compile and run from the {@code as1GymMealMachine} folder:
+ * {@code javac -d out src/*.java bench/*.java && java -cp out MachineBenchmark [name filter]}
+ */
+class BenchmarkRunner {
+    /**
+     * A benchmark with a state built for every operation.
+     *
+     * @param <S> Type of the state.
+     */
+    interface Case<S> {
+        /**
+         * Builds the state of one operation. Not timed.
+         */
+        S setup();
+
+        /**
+         * Runs one operation. Timed.
+         *
+         * @return Any result of the operation, consumed so the JIT cannot drop the work.
+         */
+        Object run(S state);
+    }
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+
+    private final String filter;
+    private final int batchSize;
+    private int sink; // Results are folded in here so they stay alive
+
+    /**
+     * Constructs a runner.
+     *
+     * @param filter    Only benchmarks whose name contains this text are run; null or empty runs all of them.
+     * @param batchSize Number of states built before each timed batch.
+     */
+    BenchmarkRunner(String filter, int batchSize) {
+        this.filter = filter == null ? "" : filter;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs a benchmark and prints its average time per operation.
+     *
+     * @param name      The name of the benchmark.
+     * @param benchmark The benchmark.
+     * @param <S>       Type of the state.
+     */
+    <S> void run(String name, Case<S> benchmark) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(benchmark);
+        }
+        List<Double> results = new ArrayList<>();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            results.add(iteration(benchmark));
+        }
+        double mean = results.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = results.stream().mapToDouble(r -> (r - mean) * (r - mean)).sum() / results.size();
+        System.out.printf("%-45s %14.1f ns/op  +- %.1f%n", name, mean, Math.sqrt(variance));
+    }
+
+    /**
+     * Runs batches of operations for about {@link #ITERATION_NANOS} of timed work, or until setups have taken a few
+     * times that long, and returns the nanoseconds per operation.
+     */
+    private <S> double iteration(Case<S> benchmark) {
+        List<S> states = new ArrayList<>(batchSize);
+        long elapsed = 0;
+        long operations = 0;
+        long deadline = System.nanoTime() + 4 * ITERATION_NANOS;
+        while (elapsed < ITERATION_NANOS && (operations == 0 || System.nanoTime() < deadline)) {
+            states.clear();
+            for (int i = 0; i < batchSize; i++) {
+                states.add(benchmark.setup());
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                sink += System.identityHashCode(benchmark.run(states.get(i)));
+            }
+            elapsed += System.nanoTime() - start;
+            operations += batchSize;
+        }
+        return (double) elapsed / operations;
+    }
+
+    /**
+     * Gives the folded results, so a caller can print it and keep the work observable.
+     */
+    int sink() {
+        return sink;
+    }
+}
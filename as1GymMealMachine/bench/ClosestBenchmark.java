@@ -0,0 +1,116 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures closest match purchases on a large machine holding many different products: the closest product by one
+ * nutrient through the nutrient index, and by all four nutrients through the k-d tree, against a scan of every slot
+ * doing the same. The purchases carry no money, so the machine is left unchanged and every run asks the same question.
+ * <p>
+ * Usage: {@code java -cp out ClosestBenchmark [rows] [columns]}
+ */
+public class ClosestBenchmark {
+    private static final double[] WEIGHTS = {1, 1, 1, 0.01};
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        GMMMachine gmm = new GMMMachine(rows, columns);
+        gmm.setClosestMatch(true);
+        Random random = new Random(42);
+        for (int slot = 0; slot < rows * columns; slot++) {
+            gmm.loadInto(slot, new Product("Meal" + slot, 10, random.nextInt(4000) / 100.0,
+                    random.nextInt(6000) / 100.0, random.nextInt(3000) / 100.0)); // One unit of a new product
+        }
+        Purchase nothing = new Purchase("CASH", 0, "PROTEIN", 0);
+        SaleResult result = new SaleResult();
+        double[][] targets = new double[64][];
+        for (int i = 0; i < targets.length; i++) {
+            double protein = random.nextInt(40);
+            double carbohydrate = random.nextInt(60);
+            double fat = random.nextInt(30);
+            targets[i] = new double[]{protein, carbohydrate, fat, 4 * protein + 4 * carbohydrate + 9 * fat};
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner("", 200);
+        int[] query = new int[1];
+        runner.run("closest/" + rows + "x" + columns + "/PROTEIN/index", new BenchmarkRunner.Case<GMMMachine>() {
+            @Override
+            public GMMMachine setup() {
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                nothing.set("CASH", 0, "PROTEIN", targets[query[0]++ & 63][0] + 0.005);
+                return state.sell(nothing, result).getSlot();
+            }
+        });
+        runner.run("closest/" + rows + "x" + columns + "/vector/kdTree", new BenchmarkRunner.Case<GMMMachine>() {
+            @Override
+            public GMMMachine setup() {
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return state.sellClosest(targets[query[0]++ & 63], WEIGHTS, nothing, result).getSlot();
+            }
+        });
+        runner.run("closest/" + rows + "x" + columns + "/vector/scan", new BenchmarkRunner.Case<GMMMachine>() {
+            @Override
+            public GMMMachine setup() {
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return scan(state, rows * columns, targets[query[0]++ & 63]);
+            }
+        });
+
+        int mismatches = 0;
+        for (double[] target : targets) {
+            if (gmm.sellClosest(target, WEIGHTS, nothing, result).getSlot() != scan(gmm, rows * columns, target)) {
+                mismatches++;
+            }
+        }
+        System.out.println("vector/kdTree " + (mismatches == 0 ? "same as scan" : mismatches + " DIFFERENT"));
+
+        // Arguments the distance cannot use must be refused
+        double[][][] invalid = {{{1, 2, 3}, WEIGHTS}, {targets[0], {1, 1, 1}}, {targets[0], {1, -1, 1, 1}},
+            {targets[0], {1, Double.NaN, 1, 1}}, {targets[0], {1, 1, Double.POSITIVE_INFINITY, 1}},
+            {{0, Double.NaN, 0, 0}, WEIGHTS}, {{0, 0, Double.NEGATIVE_INFINITY, 0}, WEIGHTS}};
+        for (double[][] arguments : invalid) {
+            try {
+                gmm.sellClosest(arguments[0], arguments[1], nothing, result);
+                throw new AssertionError("sellClosest accepted the target " + Arrays.toString(arguments[0])
+                        + " with the weights " + Arrays.toString(arguments[1]));
+            } catch (IllegalArgumentException e) {
+                // Refused, as it should be
+            }
+        }
+        System.out.println("vector/invalid arguments refused");
+        System.out.println("(sink " + runner.sink() + ")");
+    }
+
+    private static int scan(GMMMachine gmm, int capacity, double[] target) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int slot = 0; slot < capacity; slot++) {
+            Product product = gmm.getProduct(slot);
+            if (product == null || product.getQuantity() == 0) {
+                continue;
+            }
+            double distance = 0;
+            for (Nutrient nutrient : Nutrient.values()) {
+                double difference = nutrient.valueOf(product) - target[nutrient.ordinal()];
+                distance += WEIGHTS[nutrient.ordinal()] * difference * difference;
+            }
+            if (distance < bestDistance) {
+                best = slot;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+}
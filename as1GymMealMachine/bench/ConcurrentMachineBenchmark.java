@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress check and throughput comparison for {@link ConcurrentGMMMachine}.
+ * <p>
+ * The stress check lets many threads buy from one machine while another thread keeps filling it, then verifies that
+ * the units sold plus the units left equal the units filled, so no unit was sold twice or lost. The throughput part
+ * runs the same purchases against the concurrent machine and against a {@link GMMMachine} behind one global lock.
+ * <p>
+ * Usage: {@code java ConcurrentMachineBenchmark [threads] [purchasesPerThread]}
+ */
+public class ConcurrentMachineBenchmark {
+    private static final String[] CHOICES = {"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE"};
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int purchases = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        stress(threads, purchases);
+        for (int round = 0; round < 3; round++) { // First rounds warm the JIT up
+            long concurrent = timeConcurrent(threads, purchases);
+            long global = timeGlobalLock(threads, purchases);
+            System.out.printf("round %d: concurrent %,.0f purchases/s, global lock %,.0f purchases/s%n", round,
+                    threads * (double) purchases / concurrent * 1e9, threads * (double) purchases / global * 1e9);
+        }
+    }
+
+    /**
+     * Buys and fills concurrently and checks that stock is neither oversold nor lost.
+     */
+    private static void stress(int threads, int purchases) throws InterruptedException {
+        ConcurrentGMMMachine gmm = new ConcurrentGMMMachine(6, 4);
+        AtomicInteger filled = new AtomicInteger();
+        AtomicInteger sold = new AtomicInteger();
+        for (int i = 0; i < 240; i++) {
+            if (gmm.fill(product(i % 8)) == 0) {
+                filled.incrementAndGet();
+            }
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                StringBuilder messages = new StringBuilder();
+                await(start);
+                for (int i = 0; i < purchases; i++) {
+                    messages.setLength(0);
+                    if (gmm.sellProduct(purchase(random), messages) == 0) {
+                        sold.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        Thread filler = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < purchases; i++) {
+                if (gmm.fill(product(i % 8)) == 0) {
+                    filled.incrementAndGet();
+                }
+            }
+        });
+        workers.add(filler);
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        int left = 0;
+        for (int slot = 0; slot < 24; slot++) {
+            left += gmm.getQuantity(slot);
+        }
+        if (sold.get() + left != filled.get()) {
+            throw new AssertionError("filled " + filled + ", sold " + sold + ", left " + left);
+        }
+        System.out.printf("stress: filled %d, sold %d, left %d - consistent%n", filled.get(), sold.get(), left);
+    }
+
+    private static long timeConcurrent(int threads, int purchases) throws InterruptedException {
+        ConcurrentGMMMachine gmm = new ConcurrentGMMMachine(6, 4);
+        return run(threads, purchases, gmm::fill, (purchase, messages) -> gmm.sellProduct(purchase, messages));
+    }
+
+    private static long timeGlobalLock(int threads, int purchases) throws InterruptedException {
+        GMMMachine gmm = new GMMMachine();
+        Filler filler = product -> {
+            synchronized (gmm) {
+                return gmm.fill(product);
+            }
+        };
+        return run(threads, purchases, filler, (purchase, messages) -> {
+            synchronized (gmm) {
+                return gmm.sellProduct(purchase, messages);
+            }
+        });
+    }
+
+    private interface Seller {
+        int sell(Purchase purchase, StringBuilder messages);
+    }
+
+    private interface Filler {
+        int fill(Product product);
+    }
+
+    /**
+     * Runs the purchases on all threads and returns the elapsed nanoseconds. Every thread refills the machine from
+     * time to time so most purchases find stock.
+     */
+    private static long run(int threads, int purchases, Filler filler, Seller seller) throws InterruptedException {
+        for (int i = 0; i < 240; i++) {
+            filler.fill(product(i % 8));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                StringBuilder messages = new StringBuilder();
+                await(start);
+                for (int i = 0; i < purchases; i++) {
+                    messages.setLength(0);
+                    seller.sell(purchase(random), messages);
+                    if (i % 64 == 0) {
+                        filler.fill(product(i % 8));
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private static Product product(int kind) {
+        return new Product("Meal" + kind, 10 + kind, 5 * kind, 4 * kind, kind);
+    }
+
+    private static Purchase purchase(Random random) {
+        String choice = CHOICES[random.nextInt(CHOICES.length)];
+        double value = choice.equals("NUMBER") ? random.nextInt(24) : random.nextInt(choice.equals("CALORIE") ? 400 : 40);
+        return new Purchase("CASH", 20, choice, value);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
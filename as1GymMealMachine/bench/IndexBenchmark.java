@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Randomized check and throughput comparison of the nutrient indexes of {@link GMMMachine}.
+ * <p>
+ * The check runs the same random fills and purchases on a machine that uses the indexes and on one that scans every
+ * slot, and verifies after every step that both give the same answer and print the same. Purchases by number drain
+ * slots that only a later nutrient scan clears, so the indexes also meet sold out slots that are still in place, and
+ * nutrient values are asked at and just around 5 away from the values in the machine, where the legacy check
+ * {@code |x - v| <= 5} switches. The throughput part times the same purchases on both machines.
+ * <p>
+ * The size part times the purchases of a generated workload on full machines of growing size, with and without the
+ * indexes, which shows from what size on the indexes pay for their upkeep.
+ * <p>
+ * Usage: {@code java IndexBenchmark [runs] [stepsPerRun]}
+ */
+public class IndexBenchmark {
+    private static final String[] NUTRIENTS = {"PROTEIN", "CARB", "FAT", "CALORIE"};
+    private static final double[] OFFSETS = {-5, 5, Math.nextDown(-5.0), Math.nextUp(5.0), -5.0001, 5.0001,
+        -4.9999, 4.9999, 0, -2.5, 2.5};
+
+    private static final int[][] SHAPES = {{6, 4}, {8, 8}, {16, 16}, {32, 16}, {32, 32}, {64, 64}, {128, 128}};
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        for (int run = 0; run < runs; run++) {
+            check(run, steps);
+        }
+        System.out.println("check: " + runs + " runs of " + steps + " steps, indexed and scanning machines agree");
+        for (int round = 0; round < 3; round++) { // First rounds warm the JIT up
+            long indexed = time(true, runs, steps);
+            long scanning = time(false, runs, steps);
+            System.out.printf("round %d: indexed %,.0f steps/s, scanning %,.0f steps/s%n", round,
+                    runs * (double) steps / indexed * 1e9, runs * (double) steps / scanning * 1e9);
+        }
+        for (int[] shape : SHAPES) {
+            sizes(shape[0], shape[1]);
+        }
+    }
+
+    /**
+     * Times the purchases of a generated workload on a full machine of one shape, with and without the indexes.
+     */
+    private static void sizes(int rows, int columns) throws IOException {
+        int capacity = rows * columns;
+        Path folder = Files.createTempDirectory("index");
+        Path productPath = folder.resolve("products.txt");
+        Path purchasePath = folder.resolve("purchases.txt");
+        String[] productLines;
+        String[] purchaseLines;
+        try {
+            WorkloadGenerator generator = new WorkloadGenerator(13);
+            generator.setSlots(capacity);
+            generator.setKinds(Math.max(8, capacity / 4));
+            generator.writeProducts(productPath.toString(), (long) capacity * GMMMachine.SLOT_CAPACITY);
+            generator.writePurchases(purchasePath.toString(), capacity * 2L); // Sells at most a fifth of the units
+            productLines = FileInput.readFile(productPath.toString(), true, false);
+            purchaseLines = FileInput.readFile(purchasePath.toString(), true, false);
+        } finally {
+            Files.deleteIfExists(productPath);
+            Files.deleteIfExists(purchasePath);
+            Files.deleteIfExists(folder);
+        }
+        LineParser parser = new LineParser(token -> { });
+        Purchase[] purchases = new Purchase[purchaseLines.length];
+        for (int i = 0; i < purchases.length; i++) {
+            purchases[i] = new Purchase(null, 0, null, 0);
+            parser.parsePurchase(purchaseLines[i], purchases[i]);
+        }
+        double[] nanos = new double[2];
+        for (int round = 0; round < 3; round++) { // Only the last round counts, the first ones warm the JIT up
+            for (int i = 0; i < 2; i++) {
+                GMMMachine loaded = new GMMMachine(rows, columns, capacity > 4096, i == 0);
+                for (String line : productLines) {
+                    loaded.fill(parser.parseProduct(line));
+                }
+                SaleResult result = new SaleResult();
+                long total = 0;
+                long sold = 0;
+                while (sold < 400_000) {
+                    GMMMachine gmm = loaded.copy(); // Full again, copied outside the timing
+                    long start = System.nanoTime();
+                    for (Purchase purchase : purchases) {
+                        gmm.sell(purchase, result);
+                    }
+                    total += System.nanoTime() - start;
+                    sold += purchases.length;
+                }
+                nanos[i] = (double) total / sold;
+            }
+        }
+        System.out.printf("size %dx%d (%d slots): indexed %.0f ns/purchase, scanning %.0f ns/purchase%n", rows, columns,
+                capacity, nanos[0], nanos[1]);
+    }
+
+    /**
+     * Runs one random sequence on both machines and throws an AssertionError at the first difference.
+     */
+    private static void check(long seed, int steps) {
+        GMMMachine indexed = new GMMMachine(true);
+        GMMMachine scanning = new GMMMachine(false);
+        Random random = new Random(seed);
+        Product[] kinds = kinds(random);
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for (int step = 0; step < steps; step++) {
+            expected.setLength(0);
+            actual.setLength(0);
+            if (random.nextInt(3) == 0) {
+                Product kind = kinds[random.nextInt(kinds.length)];
+                expected.append(scanning.fill(kind.copy()));
+                actual.append(indexed.fill(kind.copy()));
+            } else {
+                Purchase purchase = purchase(random, kinds);
+                scanning.sellProduct(purchase, expected);
+                indexed.sellProduct(purchase, actual);
+            }
+            expected.append(scanning);
+            actual.append(indexed);
+            if (!expected.toString().equals(actual.toString())) {
+                throw new AssertionError("seed " + seed + ", step " + step + ":\n" + expected + "\nindexed:\n"
+                        + actual);
+            }
+        }
+    }
+
+    private static long time(boolean indexed, int runs, int steps) {
+        long start = System.nanoTime();
+        SaleResult result = new SaleResult();
+        long sink = 0;
+        for (int run = 0; run < runs; run++) {
+            GMMMachine gmm = new GMMMachine(indexed);
+            Random random = new Random(run);
+            Product[] kinds = kinds(random);
+            for (int step = 0; step < steps; step++) {
+                if (random.nextInt(3) == 0) {
+                    sink += gmm.fill(kinds[random.nextInt(kinds.length)].copy());
+                } else {
+                    sink += gmm.sell(purchase(random, kinds), result).getStatus().ordinal();
+                }
+            }
+        }
+        if (sink == Long.MIN_VALUE) {
+            System.out.println(sink); // Keeps the work from being optimized away
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Makes a few kinds with values on a coarse grid, so many of them are exactly 5 apart.
+     */
+    private static Product[] kinds(Random random) {
+        Product[] kinds = new Product[2 + random.nextInt(8)];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = new Product("Meal" + i, 1 + random.nextInt(30), random.nextInt(12) * 2.5,
+                    random.nextInt(12) * 2.5, random.nextInt(12) * 0.5);
+        }
+        return kinds;
+    }
+
+    /**
+     * Makes a purchase by number, or by a nutrient near the value of one of the kinds.
+     */
+    private static Purchase purchase(Random random, Product[] kinds) {
+        int money = random.nextInt(4) == 0 ? random.nextInt(10) : 100;
+        if (random.nextInt(3) == 0) {
+            return new Purchase("CASH", money, "NUMBER", random.nextInt(24));
+        }
+        String choice = NUTRIENTS[random.nextInt(NUTRIENTS.length)];
+        Product kind = kinds[random.nextInt(kinds.length)];
+        double value;
+        switch (choice) {
+            case "PROTEIN":
+                value = kind.getProtein();
+                break;
+            case "CARB":
+                value = kind.getCarbohydrate();
+                break;
+            case "FAT":
+                value = kind.getFat();
+                break;
+            default:
+                value = kind.getCalories();
+                break;
+        }
+        return new Purchase("CASH", money, choice, value + OFFSETS[random.nextInt(OFFSETS.length)]);
+    }
+}
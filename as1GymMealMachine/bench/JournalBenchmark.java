@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Measures the replay speed of {@link MachineJournal}: a large machine runs a random mix of fills and sales with a
+ * journal attached, then it is rebuilt from the whole journal and from a snapshot plus the tail. Both rebuilt machines
+ * must print the same as the original one. They, and a machine rebuilt from a snapshot taken at the end, must then
+ * answer further fills and sales the same way too, since a machine can print the same and still fill other slots.
+ * <p>
+ * Usage: {@code java -cp out JournalBenchmark [operations]}
+ */
+public class JournalBenchmark {
+    private static final String[] CHOICES = {"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE"};
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path folder = Files.createTempDirectory("journal");
+        Path journalPath = folder.resolve("machine.journal");
+        Path snapshotPath = folder.resolve("machine.snapshot");
+        try {
+            GMMMachine gmm = new GMMMachine(100, 100);
+            Random random = new Random(42);
+            long events = 0;
+            try (MachineJournal journal = MachineJournal.open(gmm, journalPath, snapshotPath, Long.MAX_VALUE)) {
+                Purchase purchase = new Purchase(null, 0, null, 0);
+                SaleResult result = new SaleResult();
+                for (int i = 0; i < operations; i++) {
+                    if (i == operations * 9 / 10) {
+                        journal.snapshot(); // The last tenth is left for the tail replay
+                    }
+                    if (random.nextInt(3) == 0) {
+                        gmm.fill(MachineBenchmark.product(random.nextInt(200)));
+                    } else {
+                        String choice = CHOICES[random.nextInt(CHOICES.length)];
+                        double value = choice.equals("NUMBER") ? random.nextInt(10_000) : random.nextInt(1200);
+                        purchase.set("CASH", 1000, choice, value);
+                        gmm.sell(purchase, result);
+                    }
+                }
+            }
+            events = Files.size(journalPath);
+            String expected = gmm.toString();
+
+            long start = System.nanoTime();
+            GMMMachine full = MachineJournal.restore(journalPath, null);
+            long fullNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            GMMMachine tail = MachineJournal.restore(journalPath, snapshotPath);
+            long tailNanos = System.nanoTime() - start;
+
+            System.out.printf("journal: %d operations, %d bytes%n", operations, events);
+            boolean fullPrints = expected.equals(full.toString());
+            boolean tailPrints = expected.equals(tail.toString());
+            System.out.printf("replay/full      %8.1f ms  %10.0f operations/s  %s%n", fullNanos / 1e6,
+                    operations / (fullNanos / 1e9), fullPrints ? "same" : "DIFFERENT");
+            System.out.printf("replay/snapshot  %8.1f ms  %10.0f operations/s  %s%n", tailNanos / 1e6,
+                    operations / (tailNanos / 1e9), tailPrints ? "same" : "DIFFERENT");
+            // Both rebuilt machines are used up here, so this comes after the printing is compared
+            boolean fullBehaves = sameBehaviour(gmm.copy(), full);
+            boolean tailBehaves = sameBehaviour(gmm.copy(), tail);
+            // Without a tail to replay, the snapshot alone has to bring back where the next fills go
+            try (MachineJournal journal = MachineJournal.open(gmm, journalPath, snapshotPath, Long.MAX_VALUE)) {
+                journal.snapshot();
+            }
+            boolean lastBehaves = sameBehaviour(gmm.copy(), MachineJournal.restore(journalPath, snapshotPath));
+            System.out.println("behaviour/full          " + (fullBehaves ? "same" : "DIFFERENT"));
+            System.out.println("behaviour/snapshot      " + (tailBehaves ? "same" : "DIFFERENT"));
+            System.out.println("behaviour/last snapshot " + (lastBehaves ? "same" : "DIFFERENT"));
+            if (!fullPrints || !tailPrints || !fullBehaves || !tailBehaves || !lastBehaves) {
+                throw new AssertionError("A rebuilt machine differs from the original one");
+            }
+        } finally {
+            Files.deleteIfExists(journalPath);
+            Files.deleteIfExists(snapshotPath);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    /**
+     * Runs the same random fills and sales on two machines and compares their answers and, every thousand operations,
+     * what they print. Later clears can bring a misplaced slot back in line, so the end alone is not enough.
+     *
+     * @return True if every fill status, sale message and printing compared was the same.
+     */
+    private static boolean sameBehaviour(GMMMachine original, GMMMachine rebuilt) {
+        Random random = new Random(7);
+        Purchase purchase = new Purchase(null, 0, null, 0);
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        for (int i = 1; i <= 20_000; i++) {
+            if (i % 1000 == 0 && !original.toString().equals(rebuilt.toString())) {
+                return false;
+            }
+            // Fills first: a sale can clear an earlier slot, which sets the first empty slot right by chance
+            if (i <= 100 || random.nextInt(3) == 0) {
+                int kind = random.nextInt(250); // Some kinds the journaled run never filled
+                if (original.fill(MachineBenchmark.product(kind)) != rebuilt.fill(MachineBenchmark.product(kind))) {
+                    return false;
+                }
+            } else {
+                String choice = CHOICES[random.nextInt(CHOICES.length)];
+                double value = choice.equals("NUMBER") ? random.nextInt(10_000) : random.nextInt(1200);
+                purchase.set("CASH", 1000, choice, value);
+                expected.setLength(0);
+                actual.setLength(0);
+                original.sellProduct(purchase, expected);
+                rebuilt.sellProduct(purchase, actual);
+                if (!expected.toString().equals(actual.toString())) {
+                    return false;
+                }
+            }
+        }
+        return original.toString().equals(rebuilt.toString());
+    }
+}
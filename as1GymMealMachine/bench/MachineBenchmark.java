@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Baseline benchmarks of the machine: fill on empty, half full and full machines, every choice of sellProduct for
+ * hits, misses and insufficient money, toString rendering, line parsing, and end-to-end Main runs on generated files,
+ * as text and converted to the binary format.
+ * <p>
+ * The JMH benchmarks of the {@code jmh} folder measure fill, sellProduct, toString and Main the same way, on the
+ * same machines and files. This class runs them with {@link BenchmarkRunner} when JMH is not at hand.
+ * <p>
+ * Usage: {@code java -cp out MachineBenchmark [name filter]}
+ */
+public class MachineBenchmark {
+    private static final int KINDS = 8;
+
+    public static void main(String[] args) throws IOException {
+        String filter = args.length > 0 ? args[0] : "";
+        BenchmarkRunner runner = new BenchmarkRunner(filter, 1000);
+
+        runner.run("fill/empty", fillCase(0));
+        runner.run("fill/half", fillCase(120));
+        runner.run("fill/full", fillCase(240));
+
+        for (String choice : new String[]{"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE"}) {
+            runner.run("sell/" + choice + "/hit", sellCase(choice, hitValue(choice), 100));
+            runner.run("sell/" + choice + "/miss", sellCase(choice, missValue(choice), 100));
+            runner.run("sell/" + choice + "/insufficient", sellCase(choice, hitValue(choice), 0));
+            runner.run("sell/" + choice + "/hit/headless", headlessSellCase(choice, hitValue(choice), 100, null));
+            runner.run("sell/" + choice + "/hit/headless/metrics",
+                    headlessSellCase(choice, hitValue(choice), 100, new MachineMetrics()));
+        }
+
+        runner.run("toString/full", new BenchmarkRunner.Case<GMMMachine>() {
+            private final GMMMachine gmm = machine(240);
+
+            @Override
+            public GMMMachine setup() {
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return state.toString();
+            }
+        });
+
+        runner.run("toString/afterSale/100x100", new BenchmarkRunner.Case<GMMMachine>() {
+            private final GMMMachine gmm = new GMMMachine(100, 100);
+            private final Purchase purchase = new Purchase(null, 0, null, 0);
+            private final SaleResult result = new SaleResult();
+            private int sales;
+
+            @Override
+            public GMMMachine setup() {
+                for (int i = 0; i < 100 * 100; i++) {
+                    gmm.fill(product(i % (KINDS - 1)));
+                }
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                // A dashboard renders the machine after every sale, so one slot changes between two renderings
+                purchase.set("CASH", 1000, "NUMBER", sales++ % (100 * 100 - 1));
+                state.sell(purchase, result);
+                state.fill(product(0)); // Keeps the machine from running out
+                return state.toString();
+            }
+        });
+
+        String line = "CASH\t20 20 10 5\tPROTEIN\t12.5";
+        runner.run("parse/split", new BenchmarkRunner.Case<String>() {
+            @Override
+            public String setup() {
+                return line;
+            }
+
+            @Override
+            public Object run(String state) {
+                return splitParse(state);
+            }
+        });
+        Purchase reused = new Purchase(null, 0, null, 0);
+        LineParser parser = new LineParser(token -> { });
+        runner.run("parse/lineParser", new BenchmarkRunner.Case<String>() {
+            @Override
+            public String setup() {
+                return line;
+            }
+
+            @Override
+            public Object run(String state) {
+                parser.parsePurchase(state, reused);
+                return reused;
+            }
+        });
+
+        Path folder = Files.createTempDirectory("gmm-bench");
+        for (int purchases : new int[]{1_000, 100_000}) {
+            Path products = folder.resolve("products.txt");
+            Path purchaseFile = folder.resolve("purchases-" + purchases + ".txt");
+            WorkloadGenerator generator = new WorkloadGenerator(42);
+            generator.writeProducts(products.toString(), 240);
+            generator.writePurchases(purchaseFile.toString(), purchases);
+            String output = folder.resolve("output.txt").toString();
+            String[] arguments = {products.toString(), purchaseFile.toString(), output};
+            BenchmarkRunner endToEnd = new BenchmarkRunner(filter, 1);
+            endToEnd.run("main/default/" + purchases, mainCase(arguments));
+            endToEnd.run("main/stream/" + purchases, mainCase(new String[]{arguments[0], arguments[1], output, "--stream"}));
+            endToEnd.run("main/stream/" + purchases + "/metrics", mainCase(new String[]{arguments[0], arguments[1],
+                    output, "--stream", "--metrics=" + folder.resolve("metrics.json")}));
+            endToEnd.run("main/pipeline/" + purchases,
+                    mainCase(new String[]{arguments[0], arguments[1], output, "--pipeline"}));
+            String binaryProducts = folder.resolve("products.bin").toString();
+            String binaryPurchases = folder.resolve("purchases-" + purchases + ".bin").toString();
+            BinaryConverter.convertProducts(arguments[0], binaryProducts);
+            BinaryConverter.convertPurchases(arguments[1], binaryPurchases);
+            endToEnd.run("main/binary/" + purchases,
+                    mainCase(new String[]{binaryProducts, binaryPurchases, output, "--binary"}));
+            if (("main/pipeline/" + purchases).contains(filter)) {
+                // The pipeline must write exactly what the sequential loop writes
+                Main.main(arguments);
+                byte[] expected = Files.readAllBytes(Path.of(output));
+                Main.main(new String[]{arguments[0], arguments[1], output, "--pipeline"});
+                boolean same = Arrays.equals(expected, Files.readAllBytes(Path.of(output)));
+                System.out.println("main/pipeline/" + purchases + " output " + (same ? "same as default" : "DIFFERENT"));
+            }
+        }
+        System.out.println("(sink " + runner.sink() + ")");
+    }
+
+    private static BenchmarkRunner.Case<GMMMachine> fillCase(int units) {
+        return new BenchmarkRunner.Case<GMMMachine>() {
+            private final Product product = product(KINDS - 1);
+
+            @Override
+            public GMMMachine setup() {
+                return machine(units);
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return state.fill(product);
+            }
+        };
+    }
+
+    private static BenchmarkRunner.Case<GMMMachine> sellCase(String choice, double value, int money) {
+        return new BenchmarkRunner.Case<GMMMachine>() {
+            private final Purchase purchase = new Purchase("CASH", money, choice, value);
+            private final StringBuilder messages = new StringBuilder();
+
+            @Override
+            public GMMMachine setup() {
+                return machine(240);
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                messages.setLength(0);
+                return state.sellProduct(purchase, messages);
+            }
+        };
+    }
+
+    private static BenchmarkRunner.Case<GMMMachine> headlessSellCase(String choice, double value, int money,
+                                                                     MachineMetrics metrics) {
+        return new BenchmarkRunner.Case<GMMMachine>() {
+            private final Purchase purchase = new Purchase("CASH", money, choice, value);
+            private final SaleResult result = new SaleResult();
+
+            @Override
+            public GMMMachine setup() {
+                GMMMachine gmm = machine(240);
+                gmm.setMetrics(metrics);
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return state.sell(purchase, result).getStatus();
+            }
+        };
+    }
+
+    private static BenchmarkRunner.Case<String[]> mainCase(String[] arguments) {
+        return new BenchmarkRunner.Case<String[]>() {
+            @Override
+            public String[] setup() {
+                return arguments;
+            }
+
+            @Override
+            public Object run(String[] state) {
+                Main.main(state);
+                return state;
+            }
+        };
+    }
+
+    /**
+     * Builds a standard machine loaded with the given number of units, cycling through the product kinds.
+     * The last product kind is never loaded, so filling it always takes a new slot if there is one.
+     */
+    static GMMMachine machine(int units) {
+        GMMMachine gmm = new GMMMachine();
+        for (int i = 0; i < units; i++) {
+            gmm.fill(product(i % (KINDS - 1)));
+        }
+        return gmm;
+    }
+
+    static Product product(int kind) {
+        return new Product("Meal" + kind, 10 + kind, 6 * kind + 3, 5 * kind + 2, kind);
+    }
+
+    static double hitValue(String choice) {
+        Product last = product(KINDS - 2); // Found only after scanning most of the machine
+        switch (choice) {
+            case "NUMBER":
+                return 22;
+            case "PROTEIN":
+                return last.getProtein();
+            case "CARB":
+                return last.getCarbohydrate();
+            case "FAT":
+                return last.getFat();
+            default:
+                return last.getCalories();
+        }
+    }
+
+    static double missValue(String choice) {
+        return choice.equals("NUMBER") ? 30 : 10_000;
+    }
+
+    /**
+     * The split based parsing of Main, kept here as the reference for the parser benchmark.
+     */
+    private static Purchase splitParse(String line) {
+        String[] parts = line.split("\t");
+        int total = 0;
+        for (String money : parts[1].split(" ")) {
+            try {
+                total += Integer.parseInt(money);
+            } catch (NumberFormatException e) {
+                System.out.println("INFO: Invalid money value: " + money);
+            }
+        }
+        return new Purchase(parts[0], total, parts[2], Double.parseDouble(parts[3]));
+    }
+}
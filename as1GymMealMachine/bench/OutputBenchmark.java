@@ -0,0 +1,68 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the write throughput of the output sinks on a large file of purchase messages: a {@link PrintStream}
+ * opened for every chunk as {@link FileOutput} used to do, the buffered writer the streaming mode used to write
+ * through, and {@link ChannelFileOutput}. Each sink writes the same 64 KiB chunk of messages until the file has the
+ * given size, and every file must end up with the same content.
+ * <p>
+ * Usage: {@code java -cp out OutputBenchmark [megabytes]}
+ */
+public class OutputBenchmark {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws IOException {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 2048;
+        StringBuilder chunk = new StringBuilder(CHUNK_SIZE);
+        for (int i = 0; chunk.length() < CHUNK_SIZE - 100; i++) {
+            chunk.append("INPUT: CASH\t20 20 10 5\tNUMBER\t").append(i % 24).append("\n")
+                    .append("PURCHASE: You have bought one Meal").append(i % 8).append("\n")
+                    .append("RETURN: Returning your change: ").append(i % 50).append(" TL\n");
+        }
+        char[] chars = new char[chunk.length()];
+        chunk.getChars(0, chunk.length(), chars, 0);
+        long chunks = megabytes * (1 << 20) / chars.length;
+
+        Path folder = Files.createTempDirectory("output");
+        Path file = folder.resolve("output.txt");
+        try {
+            long expected = -1;
+            for (String sink : new String[]{"printStream", "bufferedWriter", "channel"}) {
+                Files.deleteIfExists(file);
+                long start = System.nanoTime();
+                if (sink.equals("printStream")) {
+                    String text = chunk.toString();
+                    for (long i = 0; i < chunks; i++) {
+                        try (PrintStream ps = new PrintStream(new FileOutputStream(file.toString(), true))) {
+                            ps.print(text);
+                        }
+                    }
+                } else {
+                    try (Writer output = sink.equals("channel") ? ChannelFileOutput.open(file.toString(), false)
+                            : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file.toString()),
+                            Charset.defaultCharset()), CHUNK_SIZE)) {
+                        for (long i = 0; i < chunks; i++) {
+                            output.write(chars, 0, chars.length);
+                        }
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                long size = Files.size(file);
+                System.out.printf("write/%-16s %8d MB  %8.1f ms  %8.1f MB/s  %s%n", sink, size >> 20, nanos / 1e6,
+                        (size / 1e6) / (nanos / 1e9), expected < 0 || expected == size ? "same" : "DIFFERENT");
+                expected = size;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(folder);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Check and replay speed of {@link RestockOptimizer}.
+ * <p>
+ * The check loads random layouts, with empty slots and kinds repeated in slots far apart, and verifies that every
+ * slot of the loaded machine holds the kind the layout gives it, full, and that empty slots stay empty. With its
+ * empty slots moved to the end, a layout must also load the same from the product file written for it, and so must
+ * the best layouts of searches, which must score the same both ways. The speed part replays the history against many
+ * layouts, as a search does.
+ * <p>
+ * Usage: {@code java RestockBenchmark [layouts] [purchases]}
+ */
+public class RestockBenchmark {
+    public static void main(String[] args) throws IOException, ExecutionException, InterruptedException {
+        int layouts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int purchases = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Path folder = Files.createTempDirectory("restock");
+        Path productPath = folder.resolve("products.txt");
+        Path purchasePath = folder.resolve("purchases.txt");
+        try {
+            WorkloadGenerator generator = new WorkloadGenerator(11);
+            generator.writeProducts(productPath.toString(), 300);
+            generator.writePurchases(purchasePath.toString(), purchases);
+            String[] productLines = FileInput.readFile(productPath.toString(), true, false);
+            String[] purchaseLines = FileInput.readFile(purchasePath.toString(), true, false);
+            LineParser parser = new LineParser(token -> { });
+            Purchase[] history = new Purchase[purchaseLines.length];
+            for (int i = 0; i < history.length; i++) {
+                history[i] = new Purchase(null, 0, null, 0);
+                parser.parsePurchase(purchaseLines[i], history[i]);
+            }
+            RestockOptimizer optimizer = new RestockOptimizer(productLines, history);
+            int[] start = optimizer.layoutOf(productLines);
+            int kinds = Arrays.stream(start).max().orElse(0) + 1;
+
+            Random random = new Random(5);
+            for (int i = 0; i < 1000; i++) {
+                int[] layout = new int[start.length];
+                boolean holes = i % 2 == 0;
+                for (int slot = 0; slot < layout.length; slot++) {
+                    layout[slot] = random.nextInt(holes ? kinds + 1 : kinds) - (holes ? 1 : 0);
+                }
+                layout[5] = layout[0]; // The same kind in two slots with others between
+                check(optimizer, layout, optimizer.load(layout));
+                RestockOptimizer.compact(layout);
+                check(optimizer, layout, optimizer.load(layout));
+                check(optimizer, layout, loadFile(optimizer, layout));
+            }
+            System.out.println("layouts: load as given");
+
+            // Every layout the search keeps must load from its product file the way it was scored
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            try {
+                for (int seed = 0; seed < 20; seed++) {
+                    int[] best = optimizer.search(start, 256, new Random(seed), pool);
+                    check(optimizer, best, loadFile(optimizer, best));
+                    String scored = optimizer.evaluate(optimizer.load(best)).toString();
+                    String written = optimizer.evaluate(loadFile(optimizer, best)).toString();
+                    if (!scored.equals(written)) {
+                        throw new AssertionError("seed " + seed + ": scored " + scored + ", written " + written);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+            System.out.println("search: best layouts load from their product files as scored");
+
+            for (int round = 0; round < 3; round++) { // First rounds warm the JIT up
+                long begin = System.nanoTime();
+                for (int i = 0; i < layouts; i++) {
+                    optimizer.evaluate(optimizer.load(start));
+                }
+                long nanos = System.nanoTime() - begin;
+                System.out.printf("round %d: %,.0f layouts/s%n", round, layouts / (nanos / 1e9));
+            }
+        } finally {
+            Files.deleteIfExists(productPath);
+            Files.deleteIfExists(purchasePath);
+            Files.deleteIfExists(folder);
+        }
+    }
+
+    private static GMMMachine loadFile(RestockOptimizer optimizer, int[] layout) {
+        String file = optimizer.productFile(layout);
+        return optimizer.load(file.isEmpty() ? new String[0] : file.split("\n"));
+    }
+
+    /**
+     * Checks that a machine holds a layout, every slot of it full.
+     */
+    private static void check(RestockOptimizer optimizer, int[] layout, GMMMachine machine) {
+        int[] loaded = optimizer.layoutOf(machine);
+        if (!Arrays.equals(layout, loaded)) {
+            throw new AssertionError("layout " + Arrays.toString(layout) + ", loaded " + Arrays.toString(loaded));
+        }
+        for (int slot = machine.nextOccupied(0); slot >= 0; slot = machine.nextOccupied(slot + 1)) {
+            if (machine.getProduct(slot).getQuantity() != GMMMachine.SLOT_CAPACITY) {
+                throw new AssertionError("slot " + slot + " holds " + machine.getProduct(slot).getQuantity());
+            }
+        }
+    }
+}
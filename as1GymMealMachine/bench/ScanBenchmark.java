@@ -0,0 +1,68 @@
+import java.io.IOException;
+
+/**
+ * Compares the linear nutrient scan of a large machine over the slot stores: products kept as objects in an array,
+ * and products kept column by column in primitive arrays. Every purchase asks for a value no product has, so each one
+ * scans the whole grid and leaves the machine unchanged.
+ * <p>
+ * Without a name filter every case runs in its own JVM, since the JIT would otherwise compile the scan of the later
+ * cases with the profile of the earlier ones.
+ * <p>
+ * Usage: {@code java -cp out ScanBenchmark [rows] [columns] [name filter]}
+ */
+public class ScanBenchmark {
+    private static final String[] CHOICES = {"PROTEIN", "CARB", "FAT", "CALORIE"};
+    private static final String[] STORES = {"dense", "columnar"};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        if (args.length <= 2) {
+            String java = ProcessHandle.current().info().command().orElse("java");
+            for (String choice : CHOICES) {
+                for (String store : STORES) {
+                    new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ScanBenchmark",
+                            String.valueOf(rows), String.valueOf(columns), "/" + choice + "/" + store)
+                            .inheritIO().start().waitFor();
+                }
+            }
+            return;
+        }
+        BenchmarkRunner runner = new BenchmarkRunner(args[2], 4);
+        for (String store : STORES) {
+            if (!args[2].isEmpty() && !args[2].contains(store)) {
+                continue; // Building a large machine takes a while, so only the stores asked for are built
+            }
+            GMMMachine gmm = machine(rows, columns, store.equals("dense") ? new DenseSlotStore(rows * columns)
+                    : new ColumnarSlotStore(rows * columns));
+            for (String choice : CHOICES) {
+                Purchase miss = new Purchase("CASH", 100, choice, 10_000);
+                runner.run("scan/" + rows + "x" + columns + "/" + choice + "/" + store,
+                        scanCase(gmm, miss, new SaleResult()));
+            }
+        }
+        System.out.println("(sink " + runner.sink() + ")");
+    }
+
+    private static GMMMachine machine(int rows, int columns, SlotStore store) {
+        GMMMachine gmm = new GMMMachine(rows, columns, store, false);
+        for (int slot = 0; slot < rows * columns; slot++) {
+            gmm.loadInto(slot, MachineBenchmark.product(slot % 7)); // One unit in every slot
+        }
+        return gmm;
+    }
+
+    private static BenchmarkRunner.Case<GMMMachine> scanCase(GMMMachine gmm, Purchase purchase, SaleResult result) {
+        return new BenchmarkRunner.Case<GMMMachine>() {
+            @Override
+            public GMMMachine setup() {
+                return gmm;
+            }
+
+            @Override
+            public Object run(GMMMachine state) {
+                return state.sell(purchase, result).getStatus();
+            }
+        };
+    }
+}
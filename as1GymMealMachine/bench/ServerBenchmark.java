@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures a {@link MachineServer} on localhost: several clients sell to many machines over HTTP, each request
+ * carrying a few purchase lines, and the throughput and the request latency seen by the clients are printed along with
+ * the statistics of the server. Every machine is restocked from time to time so most purchases find a product.
+ * <p>
+ * Usage: {@code java ServerBenchmark [clients] [machines] [requestsPerClient] [purchasesPerRequest]}
+ */
+public class ServerBenchmark {
+    private static final String[] CHOICES = {"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE"};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int machines = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+        int perRequest = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        MachineServer server = new MachineServer(0, clients);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getPort() + "/machines/";
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        String products = products();
+        try {
+            for (int m = 0; m < machines; m++) {
+                post(client, base + "m" + m + "/products", products);
+            }
+            for (int round = 0; round < 3; round++) { // First rounds warm the JIT up
+                Histogram latencies = new Histogram();
+                long nanos = run(client, base, products, clients, machines, requests, perRequest, latencies);
+                long purchases = (long) clients * requests * perRequest;
+                System.out.printf(Locale.ROOT, "round %d: %,.0f purchases/s, %,.0f requests/s, client p50 %.1f us, "
+                                + "p99 %.1f us, max %.1f us%n", round, purchases / (nanos / 1e9),
+                        clients * (double) requests / (nanos / 1e9), latencies.percentile(50) / 1e3,
+                        latencies.percentile(99) / 1e3, latencies.max() / 1e3);
+            }
+            System.out.print("server: " + server.getStats());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long run(HttpClient client, String base, String products, int clients, int machines, int requests,
+                            int perRequest, Histogram latencies) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong failures = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                StringBuilder body = new StringBuilder();
+                try {
+                    start.await();
+                    for (int i = 0; i < requests; i++) {
+                        String machine = base + "m" + random.nextInt(machines);
+                        if (i % 32 == 0) {
+                            post(client, machine + "/products", products);
+                        }
+                        body.setLength(0);
+                        for (int p = 0; p < perRequest; p++) {
+                            appendPurchase(body, random);
+                        }
+                        long begin = System.nanoTime();
+                        if (post(client, machine + "/purchases", body.toString()) != 200) {
+                            failures.incrementAndGet();
+                        }
+                        latencies.record(System.nanoTime() - begin);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        if (failures.get() > 0) {
+            System.out.println("INFO: " + failures.get() + " requests failed");
+        }
+        return nanos;
+    }
+
+    private static int post(HttpClient client, String uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri)).POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    /**
+     * Builds a product file filling every slot of a machine with one of eight products.
+     */
+    private static String products() {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 240; i++) {
+            int kind = i / 30;
+            lines.append("Meal").append(kind).append('\t').append(10 + kind).append('\t').append(5 * kind).append(' ')
+                    .append(4 * kind).append(' ').append(kind).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private static void appendPurchase(StringBuilder body, Random random) {
+        String choice = CHOICES[random.nextInt(CHOICES.length)];
+        int value = choice.equals("NUMBER") ? random.nextInt(24) : random.nextInt(choice.equals("CALORIE") ? 400 : 40);
+        body.append("CASH\t20\t").append(choice).append('\t').append(value).append('\n');
+    }
+}
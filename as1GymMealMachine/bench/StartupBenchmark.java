@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long {@link Main} takes to start on a typical pair of small files, launching a new JVM for every run
+ * as a scheduler does. For each launch it records the time to first output, when the loading part of the output file
+ * appears, and the time until the JVM exits. Plain launches are always measured; fast launches, with the options
+ * {@code faststart.sh} uses, are measured too when a jar and options are given. The run fails with exit status 1 when
+ * the median time to first output of the last launch measured goes over the budget.
+ * <p>
+ * Usage: {@code java StartupBenchmark [runs] [budgetMillis] [jar fastOptions]}
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long budgetMillis = args.length > 1 ? Long.parseLong(args[1]) : 250;
+        String classPath = args.length > 2 ? args[2] : System.getProperty("java.class.path");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Path folder = Files.createTempDirectory("gmm-startup");
+        String products = folder.resolve("products.txt").toString();
+        String purchases = folder.resolve("purchases.txt").toString();
+        WorkloadGenerator generator = new WorkloadGenerator(7); // Not the seed of the training files
+        generator.writeProducts(products, 60);
+        generator.writePurchases(purchases, 500);
+        Path output = folder.resolve("output.txt");
+
+        List<String[]> launches = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        launches.add(command(java, new String[0], classPath, products, purchases, output));
+        names.add("plain");
+        if (args.length > 3) {
+            launches.add(command(java, args[3].trim().split("\\s+"), classPath, products, purchases, output));
+            names.add("fast");
+        }
+
+        long[][] firstOutput = new long[launches.size()][runs];
+        long[][] exit = new long[launches.size()][runs];
+        for (int run = -2; run < runs; run++) { // The first two runs warm the disk cache up
+            for (int i = 0; i < launches.size(); i++) { // Launches take turns, so noise hits them alike
+                long[] times = launch(launches.get(i), output.toFile());
+                if (run >= 0) {
+                    firstOutput[i][run] = times[0];
+                    exit[i][run] = times[1];
+                }
+            }
+        }
+
+        long checked = 0;
+        for (int i = 0; i < launches.size(); i++) {
+            Arrays.sort(firstOutput[i]);
+            Arrays.sort(exit[i]);
+            checked = firstOutput[i][runs / 2];
+            System.out.printf(Locale.ROOT, "%-6s first output median %6.1f ms, p90 %6.1f ms; exit median %6.1f ms%n",
+                    names.get(i), firstOutput[i][runs / 2] / 1e6, firstOutput[i][runs * 9 / 10] / 1e6,
+                    exit[i][runs / 2] / 1e6);
+        }
+        boolean within = checked <= budgetMillis * 1_000_000;
+        System.out.printf(Locale.ROOT, "BUDGET: %s, %s median first output %.1f ms, budget %d ms%n",
+                within ? "OK" : "EXCEEDED", names.get(names.size() - 1), checked / 1e6, budgetMillis);
+        if (!within) {
+            System.exit(1);
+        }
+    }
+
+    private static String[] command(String java, String[] options, String classPath, String products,
+                                    String purchases, Path output) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(Arrays.asList(options));
+        command.addAll(Arrays.asList("-cp", classPath, "Main", products, purchases, output.toString()));
+        return command.toArray(new String[0]);
+    }
+
+    /**
+     * Launches Main once and watches its output file.
+     *
+     * @return The nanoseconds to the first output and to the exit of the JVM.
+     */
+    private static long[] launch(String[] command, File output) throws IOException, InterruptedException {
+        Files.deleteIfExists(output.toPath());
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        long first = -1;
+        while (process.isAlive()) {
+            if (output.length() > 0) {
+                first = System.nanoTime() - start;
+                break;
+            }
+            LockSupport.parkNanos(100_000); // Leaves the processor to the JVM starting up
+        }
+        int status = process.waitFor();
+        long end = System.nanoTime() - start;
+        if (status != 0 || output.length() == 0) {
+            throw new IllegalStateException("Main failed with status " + status + ": " + String.join(" ", command));
+        }
+        return new long[]{first < 0 ? end : first, end};
+    }
+}
@@ -0,0 +1,70 @@
+#!/bin/sh
+# Fast start for batch runs of Main on small files, where starting the JVM costs more than selling.
+#
+# The classes are packed in a jar, and a training run of Main on generated files records every class it loads in an
+# AppCDS archive. Later runs map the archive instead of loading, parsing and verifying those classes again, and only
+# use the C1 compiler, which is ready sooner and is enough for short runs. Large files are better run with plain java.
+#
+# Usage: faststart.sh archive                                  Builds build/gmm.jar and the archive build/gmm.jsa
+#        faststart.sh run PRODUCTS PURCHASES OUTPUT [options]  Runs Main, rebuilding the archive if src changed
+#        faststart.sh bench [runs] [budgetMillis]              Runs StartupBenchmark with and without the archive
+#
+# Needs JDK 13 or later (dynamic archives). JAVA_HOME is used if set.
+set -e
+
+HERE=$(cd "$(dirname "$0")" && pwd)
+BUILD="$HERE/build"
+JAR="$BUILD/gmm.jar"
+ARCHIVE="$BUILD/gmm.jsa"
+if [ -n "$JAVA_HOME" ]; then
+    BIN="$JAVA_HOME/bin/"
+else
+    BIN=""
+fi
+FAST_OPTIONS="-XX:SharedArchiveFile=$ARCHIVE -XX:TieredStopAtLevel=1 -XX:+UseSerialGC"
+
+build_archive() {
+    rm -rf "$BUILD/classes" "$BUILD/training"
+    mkdir -p "$BUILD/classes" "$BUILD/training"
+    "${BIN}javac" -d "$BUILD/classes" "$HERE"/src/*.java
+    # The archive only matches the jar it was made with, so both are always rebuilt together
+    rm -f "$JAR" "$ARCHIVE"
+    "${BIN}jar" cf "$JAR" -C "$BUILD/classes" .
+    # A typical pair of files for one machine
+    "${BIN}java" -cp "$JAR" WorkloadGenerator "$BUILD/training/products.txt" "$BUILD/training/purchases.txt" 500 \
+        --products=60 > /dev/null
+    "${BIN}java" -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$JAR" Main "$BUILD/training/products.txt" \
+        "$BUILD/training/purchases.txt" "$BUILD/training/output.txt" > /dev/null
+    echo "ARCHIVE: $ARCHIVE"
+}
+
+archive_is_stale() {
+    [ ! -f "$ARCHIVE" ] || [ -n "$(find "$HERE/src" -name '*.java' -newer "$ARCHIVE")" ]
+}
+
+case "$1" in
+    archive)
+        build_archive
+        ;;
+    run)
+        shift
+        if archive_is_stale; then
+            build_archive > /dev/null
+        fi
+        # shellcheck disable=SC2086
+        exec "${BIN}java" $FAST_OPTIONS -cp "$JAR" Main "$@"
+        ;;
+    bench)
+        shift
+        if archive_is_stale; then
+            build_archive > /dev/null
+        fi
+        mkdir -p "$BUILD/bench"
+        "${BIN}javac" -cp "$JAR" -d "$BUILD/bench" "$HERE/bench/StartupBenchmark.java"
+        exec "${BIN}java" -cp "$JAR:$BUILD/bench" StartupBenchmark "${1:-20}" "${2:-250}" "$JAR" "$FAST_OPTIONS"
+        ;;
+    *)
+        sed -n '2,12p' "$0"
+        exit 2
+        ;;
+esac
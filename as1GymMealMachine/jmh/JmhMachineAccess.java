@@ -0,0 +1,68 @@
+import benchmarks.MachineAccess;
+
+import java.io.IOException;
+
+/**
+ * The machine as the JMH benchmarks see it, see {@link MachineAccess}. The machines and products are the ones of
+ * {@link MachineBenchmark}, so both measure the same work.
+ */
+public class JmhMachineAccess implements MachineAccess {
+    @Override
+    public Object machine(int units) {
+        return MachineBenchmark.machine(units);
+    }
+
+    @Override
+    public Object product(int kind) {
+        return MachineBenchmark.product(kind);
+    }
+
+    @Override
+    public Object purchase(String choice, double value, int money) {
+        return new Purchase("CASH", money, choice, value);
+    }
+
+    @Override
+    public double hitValue(String choice) {
+        return MachineBenchmark.hitValue(choice);
+    }
+
+    @Override
+    public double missValue(String choice) {
+        return MachineBenchmark.missValue(choice);
+    }
+
+    @Override
+    public int fill(Object machine, Object product) {
+        return ((GMMMachine) machine).fill((Product) product);
+    }
+
+    @Override
+    public int sellProduct(Object machine, Object purchase, StringBuilder messages) {
+        return ((GMMMachine) machine).sellProduct((Purchase) purchase, messages);
+    }
+
+    @Override
+    public String render(Object machine) {
+        return machine.toString();
+    }
+
+    @Override
+    public void main(String[] arguments) {
+        Main.main(arguments);
+    }
+
+    @Override
+    public void writeWorkload(String products, String purchases, int count) throws IOException {
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        generator.writeProducts(products, 240);
+        generator.writePurchases(purchases, count);
+    }
+
+    @Override
+    public void convert(String products, String purchases, String binaryProducts, String binaryPurchases)
+            throws IOException {
+        BinaryConverter.convertProducts(products, binaryProducts);
+        BinaryConverter.convertPurchases(purchases, binaryPurchases);
+    }
+}
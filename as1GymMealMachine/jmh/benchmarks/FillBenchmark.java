@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fill of a new kind on an empty, a half full and a full machine. A fill changes the machine, so every call gets a
+ * fresh one, built outside the timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FillBenchmark {
+    @Param({"0", "120", "240"})
+    private int units;
+
+    private MachineAccess access;
+    private Object product;
+    private Object machine;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        access = MachineAccess.load();
+        product = access.product(7); // A kind the machine does not hold yet
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        machine = access.machine(units);
+    }
+
+    @Benchmark
+    public int fill() {
+        return access.fill(machine, product);
+    }
+}
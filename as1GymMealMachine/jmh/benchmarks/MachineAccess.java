@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.io.IOException;
+
+/**
+ * What the JMH benchmarks use of the machine.
+ * <p>
+ * JMH only accepts benchmarks in a named package, and a named package cannot import the classes of the machine,
+ * which are in the default package. So the benchmarks go through this interface, and {@link #load()} finds the
+ * implementation, {@code JmhMachineAccess}, by name. Machines, products and purchases are passed as plain objects.
+ */
+public interface MachineAccess {
+    /**
+     * Loads the implementation from the default package.
+     *
+     * @return The implementation.
+     */
+    static MachineAccess load() {
+        try {
+            return (MachineAccess) Class.forName("JmhMachineAccess").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("JmhMachineAccess is missing from the class path", e);
+        }
+    }
+
+    /**
+     * Builds a standard machine loaded with the given number of units, as {@code MachineBenchmark.machine} does.
+     *
+     * @param units Units to load.
+     * @return The machine.
+     */
+    Object machine(int units);
+
+    /**
+     * Builds one of the products of {@code MachineBenchmark}.
+     *
+     * @param kind Kind of the product.
+     * @return The product.
+     */
+    Object product(int kind);
+
+    /**
+     * Builds a purchase paid in cash.
+     *
+     * @param choice Name of the choice.
+     * @param value  Value of the choice.
+     * @param money  Money loaded.
+     * @return The purchase.
+     */
+    Object purchase(String choice, double value, int money);
+
+    /**
+     * @return A choice value that is found in a machine built by {@link #machine(int)}.
+     */
+    double hitValue(String choice);
+
+    /**
+     * @return A choice value that is never found in a machine built by {@link #machine(int)}.
+     */
+    double missValue(String choice);
+
+    /**
+     * Fills a product into a machine.
+     *
+     * @return The status of the fill.
+     */
+    int fill(Object machine, Object product);
+
+    /**
+     * Sells a purchase, with the messages the machine prints.
+     *
+     * @return The status of the sale.
+     */
+    int sellProduct(Object machine, Object purchase, StringBuilder messages);
+
+    /**
+     * @return What the machine prints.
+     */
+    String render(Object machine);
+
+    /**
+     * Runs Main.
+     *
+     * @param arguments Arguments of Main.
+     */
+    void main(String[] arguments);
+
+    /**
+     * Writes the generated product and purchase files MachineBenchmark runs Main on.
+     *
+     * @param products  Path of the product file.
+     * @param purchases Path of the purchase file.
+     * @param count     Number of purchases.
+     */
+    void writeWorkload(String products, String purchases, int count) throws IOException;
+
+    /**
+     * Converts a product file and a purchase file to the binary format.
+     */
+    void convert(String products, String purchases, String binaryProducts, String binaryPurchases)
+            throws IOException;
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end runs of Main on the generated files of MachineBenchmark, in each reading mode, with the files as text
+ * or converted to the binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+    @Param({"1000", "100000"})
+    private int purchases;
+
+    @Param({"default", "stream", "pipeline", "binary"})
+    private String mode;
+
+    private MachineAccess access;
+    private Path folder;
+    private String[] arguments;
+
+    @Setup
+    public void setup() throws IOException {
+        access = MachineAccess.load();
+        folder = Files.createTempDirectory("gmm-jmh");
+        String products = folder.resolve("products.txt").toString();
+        String purchaseFile = folder.resolve("purchases.txt").toString();
+        String output = folder.resolve("output.txt").toString();
+        access.writeWorkload(products, purchaseFile, purchases);
+        switch (mode) {
+            case "binary":
+                String binaryProducts = folder.resolve("products.bin").toString();
+                String binaryPurchases = folder.resolve("purchases.bin").toString();
+                access.convert(products, purchaseFile, binaryProducts, binaryPurchases);
+                arguments = new String[]{binaryProducts, binaryPurchases, output, "--binary"};
+                break;
+            case "default":
+                arguments = new String[]{products, purchaseFile, output};
+                break;
+            default:
+                arguments = new String[]{products, purchaseFile, output, "--" + mode};
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    @Benchmark
+    public void main() {
+        access.main(arguments);
+    }
+}
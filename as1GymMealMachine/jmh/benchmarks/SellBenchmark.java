@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * sellProduct for every choice, on a full machine: a hit found after scanning most of the machine, a miss, and a hit
+ * paid with too little money. Every call gets a fresh machine, built outside the timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SellBenchmark {
+    @Param({"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE"})
+    private String choice;
+
+    @Param({"hit", "miss", "insufficient"})
+    private String outcome;
+
+    private MachineAccess access;
+    private Object purchase;
+    private Object machine;
+    private final StringBuilder messages = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        access = MachineAccess.load();
+        double value = outcome.equals("miss") ? access.missValue(choice) : access.hitValue(choice);
+        purchase = access.purchase(choice, value, outcome.equals("insufficient") ? 0 : 100);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        machine = access.machine(240);
+        messages.setLength(0);
+    }
+
+    @Benchmark
+    public int sellProduct() {
+        return access.sellProduct(machine, purchase, messages);
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BinaryConverter class converts product and purchase files to the binary format described in
+ * {@link BinaryFileInput}, which {@link Main} reads with its "--binary" option. Lines are parsed with the same rules
+ * as a text run, so replaying the binary files writes the same output. Files are converted line by line, so memory
+ * use only depends on the number of different names, types and choices.
+ */
+public class BinaryConverter {
+    /**
+     * The main method of the converter.
+     *
+     * @param args Command-line arguments. Expects four arguments: input product file path, input purchase file path,
+     * and the paths of the binary product and purchase files to write.
+     */
+    public static void main(String[] args) {
+        try {
+            long products = convertProducts(args[0], args[2]);
+            long purchases = convertPurchases(args[1], args[3]);
+            System.out.println("CONVERTED: " + products + " products and " + purchases + " purchases");
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts a product file. Every line is converted, even the ones after the machine would be full.
+     *
+     * @param textPath   Path to the product file.
+     * @param binaryPath Path to the binary file to write.
+     * @return The number of products converted.
+     * @throws IOException If a file cannot be read or written.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    static long convertProducts(String textPath, String binaryPath) throws IOException {
+        LineParser parser = new LineParser(token -> { });
+        try (RecordWriter writer = new RecordWriter(binaryPath, BinaryFileInput.PRODUCTS)) {
+            Main.readLines(textPath, false, line -> {
+                Product product = parser.parseProduct(line);
+                DataOutputStream out = writer.out;
+                out.writeInt(writer.id(product.getName()));
+                out.writeLong(product.getPriceMinor());
+                out.writeDouble(product.getProtein());
+                out.writeDouble(product.getCarbohydrate());
+                out.writeDouble(product.getFat());
+                writer.record(BinaryFileInput.PRODUCT_RECORD_SIZE);
+                return true;
+            });
+            writer.finish();
+            return writer.records;
+        }
+    }
+
+    /**
+     * Converts a purchase file.
+     *
+     * @param textPath   Path to the purchase file.
+     * @param binaryPath Path to the binary file to write.
+     * @return The number of purchases converted.
+     * @throws IOException If a file cannot be read or written.
+     * @throws IllegalArgumentException If a line cannot be parsed.
+     */
+    static long convertPurchases(String textPath, String binaryPath) throws IOException {
+        List<String> invalid = new ArrayList<>();
+        LineParser parser = new LineParser(token -> invalid.add(token.toString()));
+        Purchase purchase = new Purchase(null, 0, null, 0);
+        try (RecordWriter writer = new RecordWriter(binaryPath, BinaryFileInput.PURCHASES)) {
+            Main.readLines(textPath, false, line -> {
+                invalid.clear();
+                parser.parsePurchase(line, purchase);
+                byte[] text = line.toString().getBytes(StandardCharsets.UTF_8);
+                DataOutputStream out = writer.out;
+                out.writeInt(writer.id(purchase.getType()));
+                out.writeInt(writer.id(purchase.getChoice()));
+                out.writeInt(purchase.getMoneyLoaded());
+                out.writeDouble(purchase.getValue());
+                out.writeInt(invalid.size());
+                out.writeInt(text.length);
+                writer.record(BinaryFileInput.PURCHASE_RECORD_SIZE);
+                for (String token : invalid) {
+                    writer.writeString(token.getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(text);
+                writer.position += text.length;
+                return true;
+            });
+            writer.finish();
+            return writer.records;
+        }
+    }
+
+    /**
+     * Writes the records of a binary file, numbering the strings they use, and ends the file with the string table.
+     */
+    private static final class RecordWriter implements Closeable {
+        private final Path path;
+        private final DataOutputStream out;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private long position = BinaryFileInput.HEADER_SIZE; // The number of bytes written so far
+        private long records;
+
+        private RecordWriter(String path, byte kind) throws IOException {
+            this.path = Paths.get(path);
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.path), 1 << 16));
+            out.writeInt(BinaryFileInput.MAGIC);
+            out.writeShort(BinaryFileInput.VERSION);
+            out.writeByte(kind);
+            out.writeLong(0); // The number of records and the position of the table are known at the end
+            out.writeLong(0);
+        }
+
+        /**
+         * Gets the id of a string, adding it to the table the first time it is seen.
+         */
+        private int id(String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                strings.add(string);
+                ids.put(string, id);
+            }
+            return id;
+        }
+
+        /**
+         * Counts a record whose fixed part has just been written.
+         */
+        private void record(int size) {
+            records++;
+            position += size;
+        }
+
+        private void writeString(byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            position += 4 + bytes.length;
+        }
+
+        /**
+         * Ends the file with the string table and fills in the header. A file that is closed without it keeps a zero
+         * table position, so it cannot be mistaken for a complete one.
+         */
+        private void finish() throws IOException {
+            long tableOffset = position;
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(string.getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putLong(records).putLong(tableOffset).flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(header, BinaryFileInput.HEADER_SIZE - 16);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
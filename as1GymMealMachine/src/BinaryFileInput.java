@@ -0,0 +1,217 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The BinaryFileInput class reads the product and purchase files written by {@link BinaryConverter}, so a run can
+ * replay them without parsing text. Numbers are stored big-endian, as {@link java.io.DataOutputStream} writes them:
+ * <ul>
+ *     <li>Header: magic "GMMB" (int), version (short), kind (byte, 1 for products, 2 for purchases), number of
+ *     records (long) and position of the string table (long).</li>
+ *     <li>Product record: name id (int), price in minor units (long), protein, carbohydrate and fat (doubles).</li>
+ *     <li>Purchase record: type id (int), choice id (int), money loaded (int), value (double), number of invalid
+ *     money values (int) and length of the line (int), followed by the invalid money values and the line itself.
+ *     The line is kept as written, because the output repeats it after "INPUT: ".</li>
+ *     <li>String table, after the records: number of strings (int), then each string. Names, types and choices
+ *     repeat a lot, so records refer to them by their index in this table.</li>
+ * </ul>
+ * Strings are written as their length in bytes (int) followed by their UTF-8 bytes. Records are read through a
+ * fixed size buffer, so memory use does not depend on the size of the file.
+ */
+class BinaryFileInput implements Closeable {
+    static final int MAGIC = 0x474D4D42; // "GMMB"
+    static final short VERSION = 1;
+    static final byte PRODUCTS = 1;
+    static final byte PURCHASES = 2;
+    static final int HEADER_SIZE = 4 + 2 + 1 + 8 + 8;
+    static final int PRODUCT_RECORD_SIZE = 4 + 8 + 3 * 8;
+    static final int PURCHASE_RECORD_SIZE = 4 + 4 + 4 + 8 + 4 + 4;
+
+    private final String path;
+    private final FileChannel channel;
+    private final long recordCount;
+    private final String[] strings;
+    private final Choice[] choices; // The choice of each string, only resolved for purchase files
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long recordsRead;
+    private int lineStart; // Where the line of the last purchase starts in the buffer
+    private int lineLength;
+
+    private BinaryFileInput(String path, FileChannel channel, byte kind) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        buffer.limit(0); // Nothing read yet
+        fill(HEADER_SIZE);
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION || buffer.get() != kind) {
+            throw new IOException("Not a binary " + (kind == PRODUCTS ? "product" : "purchase") + " file: " + path);
+        }
+        recordCount = buffer.getLong();
+        long tableOffset = buffer.getLong();
+        if (tableOffset < HEADER_SIZE) {
+            throw new IOException("Incomplete binary file, its conversion did not finish: " + path);
+        }
+        // Reads the string table first, then comes back to the records
+        channel.position(tableOffset);
+        buffer.clear().flip();
+        fill(4);
+        strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            fill(4);
+            int length = buffer.getInt();
+            fill(length);
+            strings[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        if (kind == PURCHASES) {
+            choices = new Choice[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                choices[i] = Choice.of(strings[i]);
+            }
+        } else {
+            choices = null;
+        }
+        channel.position(HEADER_SIZE);
+        buffer.clear().flip();
+    }
+
+    /**
+     * Opens a binary file.
+     *
+     * @param path Path to the file.
+     * @param kind {@link #PRODUCTS} or {@link #PURCHASES}.
+     * @return The open file, positioned at its first record.
+     * @throws IOException If the file cannot be read or is not a binary file of the given kind.
+     */
+    static BinaryFileInput open(String path, byte kind) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            return new BinaryFileInput(path, channel, kind);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next product.
+     *
+     * @return The product, or null after the last one.
+     * @throws IOException If the file cannot be read or is damaged.
+     */
+    Product nextProduct() throws IOException {
+        if (recordsRead == recordCount) {
+            return null;
+        }
+        recordsRead++;
+        fill(PRODUCT_RECORD_SIZE);
+        String name = string(buffer.getInt());
+        long price = buffer.getLong();
+        double protein = buffer.getDouble();
+        double carbohydrate = buffer.getDouble();
+        double fat = buffer.getDouble();
+        return Product.ofMinorUnits(name, price, protein, carbohydrate, fat);
+    }
+
+    /**
+     * Reads the next purchase into the given one, reporting its invalid money values as parsing its line would.
+     * The line itself can then be added to the output with {@link #appendLine(StringBuilder)}.
+     *
+     * @param purchase The purchase to overwrite.
+     * @param errors   The handler for the invalid money values of the purchase.
+     * @return True if a purchase was read, false after the last one.
+     * @throws IOException If the file cannot be read or is damaged.
+     */
+    boolean nextPurchase(Purchase purchase, LineParser.ErrorHandler errors) throws IOException {
+        if (recordsRead == recordCount) {
+            return false;
+        }
+        recordsRead++;
+        fill(PURCHASE_RECORD_SIZE);
+        String type = string(buffer.getInt());
+        int choiceId = buffer.getInt();
+        String choice = string(choiceId);
+        int moneyLoaded = buffer.getInt();
+        double value = buffer.getDouble();
+        int invalidCount = buffer.getInt();
+        int length = buffer.getInt();
+        for (int i = 0; i < invalidCount; i++) {
+            fill(4);
+            int tokenLength = buffer.getInt();
+            fill(tokenLength);
+            errors.invalidMoney(new String(buffer.array(), buffer.position(), tokenLength, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + tokenLength);
+        }
+        fill(length); // The line is read last, so it stays in place until the next record
+        lineStart = buffer.position();
+        lineLength = length;
+        buffer.position(lineStart + length);
+        purchase.set(type, moneyLoaded, choice, choices[choiceId], value);
+        return true;
+    }
+
+    /**
+     * Appends the line of the last purchase read, as it was written in the text file.
+     *
+     * @param messages Where the line is appended.
+     */
+    void appendLine(StringBuilder messages) {
+        byte[] bytes = buffer.array();
+        int end = lineStart + lineLength;
+        for (int i = lineStart; i < end; i++) {
+            if (bytes[i] < 0) {
+                // Not plain ASCII, so the bytes are decoded as a whole
+                messages.append(new String(bytes, lineStart, lineLength, StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = lineStart; i < end; i++) {
+            messages.append((char) bytes[i]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String string(int id) throws IOException {
+        if (id < 0 || id >= strings.length) {
+            throw new IOException("Damaged binary file, unknown string " + id + ": " + path);
+        }
+        return strings[id];
+    }
+
+    /**
+     * Makes sure the next bytes of the file are in the buffer, reading more if needed.
+     */
+    private void fill(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Damaged binary file, negative length: " + path);
+        }
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        if (count > buffer.capacity()) {
+            if (count > channel.size()) {
+                throw new IOException("Damaged binary file, length beyond the end: " + path);
+            }
+            // A line longer than the buffer, which then grows to hold it
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(count, 2 * buffer.capacity()));
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < count) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of binary file: " + path);
+            }
+        }
+        buffer.flip();
+    }
+}
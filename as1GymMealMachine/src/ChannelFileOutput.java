@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The ChannelFileOutput class writes text to a file through one {@link FileChannel} kept open for the whole run.
+ * Characters are encoded with the default charset in small steps and gathered in a large direct byte buffer, which is
+ * written to the channel whenever it fills up, so large outputs go to the file in large chunks without building
+ * intermediate Strings. Characters the charset cannot encode are replaced, as {@link java.io.PrintStream} does.
+ * <p>
+ * The direct buffers are pooled, so opening and closing outputs does not allocate native memory each time.
+ * Like other writers, an output is not safe for use by several threads at once.
+ */
+public class ChannelFileOutput extends Writer {
+    private static final int BUFFER_SIZE = 1 << 20; // Bytes written to the channel at once
+    private static final int STAGING_SIZE = 1 << 13; // Bytes encoded at once
+    private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(4);
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private ByteBuffer buffer; // Null once closed
+    // Encoders only run their fast array loops on heap buffers, so characters are encoded into this small array
+    // and copied into the direct buffer in bulk.
+    private final ByteBuffer staging = ByteBuffer.allocate(STAGING_SIZE);
+    private final char[] pair = new char[2]; // A high surrogate left over from the previous write, then its low one
+    private boolean pending; // True if pair[0] holds a high surrogate waiting for the next write
+    private final char[] copied = new char[STAGING_SIZE]; // Text copied out of Strings and builders to be encoded
+
+    private ChannelFileOutput(FileChannel channel) {
+        this.channel = channel;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer pooled = BUFFER_POOL.poll();
+        this.buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a file for writing.
+     *
+     * @param path   Path for the file content is going to be written.
+     * @param append Append status, true if wanted to append to file if it exists, false if wanted to create file from zero.
+     * @return The output, which must be closed to write the last chunk.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static ChannelFileOutput open(String path, boolean append) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return new ChannelFileOutput(channel);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        copied[0] = (char) c;
+        encode(CharBuffer.wrap(copied, 0, 1));
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        encode(text, offset, offset + length);
+    }
+
+    @Override
+    public ChannelFileOutput append(CharSequence text) throws IOException {
+        CharSequence content = text == null ? "null" : text;
+        encode(content, 0, content.length());
+        return this;
+    }
+
+    @Override
+    public ChannelFileOutput append(CharSequence text, int start, int end) throws IOException {
+        encode(text == null ? "null" : text, start, end);
+        return this;
+    }
+
+    /**
+     * Encodes part of a text, copying it into a char array first because encoders only run their fast loops on
+     * arrays.
+     *
+     * @param text  The text to encode.
+     * @param start Index of the first character.
+     * @param end   Index after the last character.
+     * @throws IOException If the output is closed or the file cannot be written.
+     */
+    private void encode(CharSequence text, int start, int end) throws IOException {
+        while (start < end) {
+            int length = Math.min(end - start, copied.length);
+            if (text instanceof String) {
+                ((String) text).getChars(start, start + length, copied, 0);
+            } else if (text instanceof StringBuilder) {
+                ((StringBuilder) text).getChars(start, start + length, copied, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    copied[i] = text.charAt(start + i);
+                }
+            }
+            encode(CharBuffer.wrap(copied, 0, length));
+            start += length;
+        }
+    }
+
+    /**
+     * Encodes characters into the buffer, writing the buffer to the channel each time it fills up.
+     * A high surrogate at the end of the characters is kept until the next write, since its low surrogate may come
+     * with it.
+     *
+     * @param chars The characters to encode.
+     * @throws IOException If the output is closed or the file cannot be written.
+     */
+    private void encode(CharBuffer chars) throws IOException {
+        if (buffer == null) {
+            throw new IOException("The output is closed");
+        }
+        while (pending && chars.hasRemaining()) {
+            pair[1] = chars.get();
+            CharBuffer joined = CharBuffer.wrap(pair);
+            encode(joined, false);
+            pending = joined.hasRemaining(); // The second character is a high surrogate as well
+            if (pending) {
+                pair[0] = joined.get();
+            }
+        }
+        encode(chars, false);
+        if (chars.hasRemaining()) {
+            // Only a lone high surrogate is left, as the encoder waits for more input
+            pair[0] = chars.get();
+            pending = true;
+        }
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, staging, endOfInput);
+            stage();
+            if (!result.isOverflow()) {
+                break; // Errors are replaced, so the rest is an underflow
+            }
+        }
+    }
+
+    /**
+     * Moves the encoded bytes into the buffer, writing the buffer to the channel when it is full.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void stage() throws IOException {
+        staging.flip();
+        if (staging.remaining() > buffer.remaining()) {
+            drain();
+        }
+        buffer.put(staging);
+        staging.clear();
+    }
+
+    /**
+     * Writes the content of the buffer to the channel and empties it.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered bytes to the file. They reach the operating system, but are not forced to the disk.
+     *
+     * @throws IOException If the output is closed or the file cannot be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buffer == null) {
+            throw new IOException("The output is closed");
+        }
+        drain();
+    }
+
+    /**
+     * Writes the rest of the content, closes the file and gives the buffer back to the pool.
+     * A high surrogate never followed by its low one is written as a replacement.
+     *
+     * @throws IOException If the file cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (pending) {
+                pending = false;
+                encode(CharBuffer.wrap(pair, 0, 1), true);
+            } else {
+                encode(CharBuffer.allocate(0), true);
+            }
+            while (encoder.flush(staging).isOverflow()) {
+                stage();
+            }
+            stage();
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                buffer.clear();
+                BUFFER_POOL.offer(buffer); // Dropped if the pool is full
+                buffer = null;
+            }
+        }
+    }
+}
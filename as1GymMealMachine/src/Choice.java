@@ -0,0 +1,65 @@
+/**
+ * The Choice enum lists the ways a customer can pick a product. A purchase resolves its choice text to one of these
+ * once, when it is parsed, so selling looks the choice up by ordinal instead of comparing strings.
+ * Any text the machine does not know becomes {@link #OTHER}, which never finds a product.
+ */
+enum Choice {
+    NUMBER(null),
+    PROTEIN(Nutrient.PROTEIN),
+    CARB(Nutrient.CARB),
+    FAT(Nutrient.FAT),
+    CALORIE(Nutrient.CALORIE),
+    OTHER(null);
+
+    private static final Choice[] KNOWN = {NUMBER, PROTEIN, CARB, FAT, CALORIE};
+
+    private final Nutrient nutrient;
+
+    Choice(Nutrient nutrient) {
+        this.nutrient = nutrient;
+    }
+
+    /**
+     * Gets the nutrient this choice compares.
+     *
+     * @return The nutrient, or null if the choice is not by a nutritional value.
+     */
+    Nutrient nutrient() {
+        return nutrient;
+    }
+
+    /**
+     * Resolves the text of a choice.
+     *
+     * @param text The choice as written in a purchase line, such as "PROTEIN".
+     * @return The choice, or {@link #OTHER} if the text names no choice the machine knows.
+     */
+    static Choice of(String text) {
+        return text == null ? OTHER : of(text, 0, text.length());
+    }
+
+    /**
+     * Resolves the text of a choice written in part of a line, without copying it out.
+     *
+     * @param line  The line holding the choice.
+     * @param start The index of the first character of the choice.
+     * @param end   The index after the last character of the choice.
+     * @return The choice, or {@link #OTHER} if the text names no choice the machine knows.
+     */
+    static Choice of(CharSequence line, int start, int end) {
+        for (Choice choice : KNOWN) {
+            String name = choice.name();
+            if (name.length() != end - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length() && line.charAt(start + i) == name.charAt(i)) {
+                i++;
+            }
+            if (i == name.length()) {
+                return choice;
+            }
+        }
+        return OTHER;
+    }
+}
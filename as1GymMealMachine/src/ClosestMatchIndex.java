@@ -0,0 +1,346 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ClosestMatchIndex class keeps the stocked slots of a machine in a k-d tree over their protein, carbohydrate,
+ * fat and calorie values, so the product closest to a weighted target is found without looking at every slot.
+ * <p>
+ * Slots holding products with the same values share one node, which keeps the tree small when a product fills many
+ * slots, and every node knows its smallest stocked slot so that ties go to the first slot in row-major order.
+ * A node whose slots are all sold out stays in the tree, and its subtree is skipped once nothing below it is stocked,
+ * until such nodes make up half of the tree and it is built again without them. New nodes are added at the leaves;
+ * when one lands too deep, the subtree that has become lopsided above it is rebuilt balanced, as in a scapegoat tree,
+ * so the depth stays logarithmic whatever the order of the fills.
+ */
+class ClosestMatchIndex {
+    private static final int NIL = -1;
+    private static final int DIMENSIONS = Nutrient.values().length;
+    private static final double BALANCE = 0.7; // Largest share of a subtree one side may hold after a deep insert
+
+    private double[][] points = new double[16][];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] parent = new int[16];
+    private int[][] slots = new int[16][]; // Stocked slots holding the product of each node, sorted
+    private int[] count = new int[16]; // Number of stocked slots of each node
+    private int[] live = new int[16]; // Stocked slots in the subtree of each node
+    private int[] subtreeMin = new int[16]; // Smallest stocked slot in the subtree of each node, MAX_VALUE if none
+    private int[] size = new int[16]; // Nodes in the subtree of each node
+    private int nodeCount;
+    private int deadNodes; // Nodes without stocked slots
+    private int root = NIL;
+    private final Map<Point, Integer> nodes = new HashMap<>();
+    private int lastCandidates; // Nodes checked by the last lookup
+    // State of the running lookup, kept in fields to spare the recursion the parameters.
+    private double[] target;
+    private double[] weights;
+    private double bestDistance;
+    private int bestSlot;
+
+    /**
+     * The values of a product, usable as a key.
+     */
+    private static final class Point {
+        private final double[] values;
+
+        Point(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Point && Arrays.equals(values, ((Point) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    /**
+     * Adds a stocked slot to the index. The slot must not be in the index already.
+     *
+     * @param slot   The slot index in row-major order.
+     * @param values The nutritional values of the product in that slot, by {@link Nutrient} ordinal.
+     */
+    void insert(int slot, double[] values) {
+        Integer found = nodes.get(new Point(values));
+        int node;
+        if (found != null) {
+            node = found;
+            if (count[node] == 0) {
+                deadNodes--;
+            }
+        } else {
+            node = addNode(values.clone());
+        }
+        int at = -Arrays.binarySearch(slots[node], 0, count[node], slot) - 1;
+        if (count[node] == slots[node].length) {
+            slots[node] = Arrays.copyOf(slots[node], count[node] * 2);
+        }
+        System.arraycopy(slots[node], at, slots[node], at + 1, count[node] - at);
+        slots[node][at] = slot;
+        count[node]++;
+        for (int n = node; n != NIL; n = parent[n]) {
+            live[n]++;
+            subtreeMin[n] = Math.min(subtreeMin[n], slot);
+        }
+    }
+
+    /**
+     * Removes a slot from the index. Does nothing if the slot is not indexed.
+     *
+     * @param slot   The slot index in row-major order.
+     * @param values The nutritional values the slot was inserted with.
+     */
+    void remove(int slot, double[] values) {
+        Integer found = nodes.get(new Point(values));
+        int at = found == null ? -1 : Arrays.binarySearch(slots[found], 0, count[found], slot);
+        if (at < 0) {
+            return;
+        }
+        int node = found;
+        System.arraycopy(slots[node], at + 1, slots[node], at, count[node] - at - 1);
+        count[node]--;
+        for (int n = node; n != NIL; n = parent[n]) {
+            live[n]--;
+            if (subtreeMin[n] == slot) {
+                updateSubtreeMin(n);
+            }
+        }
+        if (count[node] == 0 && ++deadNodes > nodeCount / 2 + 16) {
+            compact();
+        }
+    }
+
+    /**
+     * Finds the stocked slot whose product is closest to the target, by the weighted squared distance
+     * {@code sum of weights[i] * (value[i] - target[i])^2}. Among equally close products the first slot in row-major
+     * order wins.
+     *
+     * @param target  The values asked for, by {@link Nutrient} ordinal.
+     * @param weights The weight of each nutrient, by {@link Nutrient} ordinal; a weight of 0 ignores that nutrient.
+     * @return The slot index of the closest product, or -1 if no slot is stocked.
+     */
+    int closest(double[] target, double[] weights) {
+        this.target = target;
+        this.weights = weights;
+        bestDistance = Double.POSITIVE_INFINITY;
+        bestSlot = NIL;
+        lastCandidates = 0;
+        search(root, 0);
+        this.target = null;
+        this.weights = null;
+        return bestSlot;
+    }
+
+    /**
+     * Gets the number of nodes the last call of {@link #closest} checked.
+     *
+     * @return The number of candidate nodes checked.
+     */
+    int lastCandidates() {
+        return lastCandidates;
+    }
+
+    private void search(int node, int depth) {
+        if (node == NIL || live[node] == 0) {
+            return; // Nothing stocked below
+        }
+        if (count[node] > 0) {
+            lastCandidates++;
+            double distance = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                double difference = points[node][i] - target[i];
+                distance += weights[i] * difference * difference;
+            }
+            if (!Double.isNaN(distance) && (bestSlot == NIL || distance < bestDistance
+                    || (distance == bestDistance && slots[node][0] < bestSlot))) {
+                bestDistance = distance;
+                bestSlot = slots[node][0];
+            }
+        }
+        int axis = depth % DIMENSIONS;
+        double difference = target[axis] - points[node][axis];
+        boolean goLeft = difference < 0;
+        search(goLeft ? left[node] : right[node], depth + 1);
+        // The far side is skipped if its plane is farther than the best match, or as far but with no smaller slot
+        int far = goLeft ? right[node] : left[node];
+        double bound = weights[axis] * difference * difference;
+        if (far != NIL && !(bound > bestDistance)
+                && !(bestSlot != NIL && bound == bestDistance && subtreeMin[far] > bestSlot)) {
+            search(far, depth + 1);
+        }
+    }
+
+    /**
+     * Creates a node, hangs it under the leaf its point falls into and rebalances if it lands too deep.
+     */
+    private int addNode(double[] point) {
+        if (nodeCount == points.length) {
+            int length = nodeCount * 2;
+            points = Arrays.copyOf(points, length);
+            left = Arrays.copyOf(left, length);
+            right = Arrays.copyOf(right, length);
+            parent = Arrays.copyOf(parent, length);
+            slots = Arrays.copyOf(slots, length);
+            count = Arrays.copyOf(count, length);
+            live = Arrays.copyOf(live, length);
+            subtreeMin = Arrays.copyOf(subtreeMin, length);
+            size = Arrays.copyOf(size, length);
+        }
+        int node = nodeCount++;
+        points[node] = point;
+        left[node] = NIL;
+        right[node] = NIL;
+        slots[node] = new int[1];
+        count[node] = 0;
+        live[node] = 0;
+        subtreeMin[node] = Integer.MAX_VALUE;
+        size[node] = 1;
+        nodes.put(new Point(point), node);
+        int above = NIL;
+        int depth = 0;
+        for (int n = root; n != NIL; depth++) {
+            above = n;
+            size[n]++;
+            n = point[depth % DIMENSIONS] < points[n][depth % DIMENSIONS] ? left[n] : right[n];
+        }
+        parent[node] = above;
+        if (above == NIL) {
+            root = node;
+        } else if (point[(depth - 1) % DIMENSIONS] < points[above][(depth - 1) % DIMENSIONS]) {
+            left[above] = node;
+        } else {
+            right[above] = node;
+        }
+        if (depth > Math.log(nodeCount) / Math.log(1 / BALANCE) + 2) {
+            // Too deep: some ancestor has a side holding more than its share, rebuild the lowest such one
+            int child = node;
+            for (int n = above; n != NIL; child = n, n = parent[n], depth--) {
+                if (size[child] > BALANCE * size[n]) {
+                    rebuild(n, depth - 1);
+                    break;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds a subtree balanced in place.
+     *
+     * @param top   The root of the subtree.
+     * @param depth The depth of that root, which decides the axes below it.
+     */
+    private void rebuild(int top, int depth) {
+        int[] order = new int[size[top]];
+        int n = 0;
+        int[] stack = new int[size[top]];
+        int stackSize = 0;
+        stack[stackSize++] = top;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            order[n++] = node;
+            if (left[node] != NIL) {
+                stack[stackSize++] = left[node];
+            }
+            if (right[node] != NIL) {
+                stack[stackSize++] = right[node];
+            }
+        }
+        int above = parent[top];
+        boolean wasLeft = above != NIL && left[above] == top;
+        int built = build(toBoxed(order), 0, order.length, depth, above);
+        if (above == NIL) {
+            root = built;
+        } else if (wasLeft) {
+            left[above] = built;
+        } else {
+            right[above] = built;
+        }
+    }
+
+    /**
+     * Builds the whole tree again from the nodes that still have stocked slots, renumbering them from 0.
+     */
+    private void compact() {
+        int kept = 0;
+        nodes.clear();
+        for (int node = 0; node < nodeCount; node++) {
+            if (count[node] > 0) {
+                points[kept] = points[node];
+                slots[kept] = slots[node];
+                count[kept] = count[node];
+                nodes.put(new Point(points[kept]), kept);
+                kept++;
+            }
+        }
+        for (int node = kept; node < nodeCount; node++) {
+            points[node] = null;
+            slots[node] = null;
+        }
+        nodeCount = kept;
+        deadNodes = 0;
+        Integer[] order = new Integer[kept];
+        for (int i = 0; i < kept; i++) {
+            order[i] = i;
+        }
+        root = build(order, 0, kept, 0, NIL);
+    }
+
+    /**
+     * Builds a balanced subtree from a range of nodes, splitting at the median of the axis of the depth.
+     *
+     * @return The root of the subtree.
+     */
+    private int build(Integer[] order, int from, int to, int depth, int above) {
+        if (from >= to) {
+            return NIL;
+        }
+        int axis = depth % DIMENSIONS;
+        Arrays.sort(order, from, to, (a, b) -> Double.compare(points[a][axis], points[b][axis]));
+        int middle = (from + to) >>> 1;
+        // Values equal to the split go right, as in addNode, so the median moves to the first of its equals
+        while (middle > from && !(points[order[middle - 1]][axis] < points[order[middle]][axis])) {
+            middle--;
+        }
+        int node = order[middle];
+        parent[node] = above;
+        left[node] = build(order, from, middle, depth + 1, node);
+        right[node] = build(order, middle + 1, to, depth + 1, node);
+        live[node] = count[node];
+        size[node] = 1;
+        if (left[node] != NIL) {
+            live[node] += live[left[node]];
+            size[node] += size[left[node]];
+        }
+        if (right[node] != NIL) {
+            live[node] += live[right[node]];
+            size[node] += size[right[node]];
+        }
+        updateSubtreeMin(node);
+        return node;
+    }
+
+    private void updateSubtreeMin(int node) {
+        int min = count[node] > 0 ? slots[node][0] : Integer.MAX_VALUE;
+        if (left[node] != NIL) {
+            min = Math.min(min, subtreeMin[left[node]]);
+        }
+        if (right[node] != NIL) {
+            min = Math.min(min, subtreeMin[right[node]]);
+        }
+        subtreeMin[node] = min;
+    }
+
+    private static Integer[] toBoxed(int[] values) {
+        Integer[] boxed = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ColumnarSlotStore class keeps the fields of the products in parallel primitive arrays, one per field, with the
+ * names kept once in a table and referred to by id. A scan over one nutrient of many slots then reads a single
+ * contiguous array instead of following a pointer to a product object per slot.
+ * <p>
+ * {@link #get(int)} still gives a {@link Product}: a view of the slot that reads and writes the arrays, so changing its
+ * quantity changes the slot.
+ */
+class ColumnarSlotStore implements SlotStore {
+    private static final int EMPTY = -1;
+
+    private final int[] nameIds; // Index into the name table, EMPTY for an empty slot
+    private final int[] quantities;
+    private final long[] prices; // In minor units
+    private final double[][] nutrients; // One column per nutrient, indexed by the ordinal of the nutrient
+    private final Product[] views; // View of each filled slot, built when the slot is filled
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameTable = new HashMap<>();
+
+    /**
+     * Constructs an empty store with the given number of slots.
+     *
+     * @param capacity The number of slots.
+     */
+    ColumnarSlotStore(int capacity) {
+        nameIds = new int[capacity];
+        Arrays.fill(nameIds, EMPTY);
+        quantities = new int[capacity];
+        prices = new long[capacity];
+        nutrients = new double[Nutrient.values().length][capacity];
+        views = new Product[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return nameIds.length;
+    }
+
+    @Override
+    public Product get(int slot) {
+        return views[slot];
+    }
+
+    @Override
+    public void set(int slot, Product product) {
+        if (product == null) {
+            nameIds[slot] = EMPTY;
+            views[slot] = null;
+            return;
+        }
+        String name = product.getName();
+        nameIds[slot] = nameTable.computeIfAbsent(name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+        quantities[slot] = product.getQuantity();
+        prices[slot] = product.getPriceMinor();
+        for (Nutrient nutrient : Nutrient.values()) {
+            nutrients[nutrient.ordinal()][slot] = nutrient.valueOf(product);
+        }
+        views[slot] = new SlotView(names.get(nameIds[slot]), slot);
+    }
+
+    @Override
+    public SlotStore copy() {
+        ColumnarSlotStore copy = new ColumnarSlotStore(capacity());
+        System.arraycopy(nameIds, 0, copy.nameIds, 0, nameIds.length);
+        System.arraycopy(quantities, 0, copy.quantities, 0, quantities.length);
+        System.arraycopy(prices, 0, copy.prices, 0, prices.length);
+        for (int i = 0; i < nutrients.length; i++) {
+            System.arraycopy(nutrients[i], 0, copy.nutrients[i], 0, nutrients[i].length);
+        }
+        copy.names.addAll(names);
+        copy.nameTable.putAll(nameTable);
+        for (int slot = 0; slot < views.length; slot++) {
+            if (views[slot] != null) {
+                copy.views[slot] = copy.new SlotView(views[slot].getName(), slot); // Views of the arrays of the copy
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean sharesProducts() {
+        return false; // The products are views of the arrays, which every copy has its own of
+    }
+
+    @Override
+    public boolean isEmpty(int slot) {
+        return nameIds[slot] == EMPTY;
+    }
+
+    @Override
+    public int quantity(int slot) {
+        return quantities[slot];
+    }
+
+    @Override
+    public long price(int slot) {
+        return prices[slot];
+    }
+
+    @Override
+    public double value(int slot, Nutrient nutrient) {
+        return nutrients[nutrient.ordinal()][slot];
+    }
+
+    /**
+     * A product that reads its fields from the arrays of one slot. The name is kept in the view, since it does not
+     * change while the product stays in the slot.
+     */
+    private final class SlotView extends Product {
+        private final int slot;
+
+        SlotView(String name, int slot) {
+            super(name, 0, 0, 0, 0);
+            this.slot = slot;
+        }
+
+        @Override
+        public double getCalories() {
+            return nutrients[Nutrient.CALORIE.ordinal()][slot];
+        }
+
+        @Override
+        public int getQuantity() {
+            return quantities[slot];
+        }
+
+        @Override
+        public long getPriceMinor() {
+            return prices[slot];
+        }
+
+        @Override
+        public void increaseQuantity() {
+            quantities[slot]++;
+        }
+
+        @Override
+        public void decreaseQuantity() {
+            if (quantities[slot] > 0) {
+                quantities[slot]--;
+            }
+        }
+
+        @Override
+        public double getCarbohydrate() {
+            return nutrients[Nutrient.CARB.ordinal()][slot];
+        }
+
+        @Override
+        public double getProtein() {
+            return nutrients[Nutrient.PROTEIN.ordinal()][slot];
+        }
+
+        @Override
+        public double getFat() {
+            return nutrients[Nutrient.FAT.ordinal()][slot];
+        }
+    }
+}
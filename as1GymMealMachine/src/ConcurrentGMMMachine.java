@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ConcurrentGMMMachine class is a Gym Meal Machine that can be shared by many threads.
+ * It prints the same messages as {@link GMMMachine}, but keeps the stock of each slot in an atomic word instead of
+ * in the {@link Product} objects, so the products it holds are never changed.
+ * <p>
+ * The stock word of a slot holds the quantity in its low 8 bits and a generation number in the rest. The generation
+ * changes whenever the product of the slot changes, so a buyer that has read an old product cannot take a unit of the
+ * new one. NUMBER purchases, fills and clears lock only the stripe of the addressed slot; nutrient purchases take no
+ * locks at all and take their unit with a compare-and-set on the stock word.
+ * <p>
+ * Unlike {@link GMMMachine}, a slot is cleared as soon as its last unit is sold.
+ */
+class ConcurrentGMMMachine {
+    private static final int SLOT_CAPACITY = 10;
+    private static final double TOLERANCE = 5;
+    private static final int QUANTITY_BITS = 8;
+    private static final int QUANTITY_MASK = (1 << QUANTITY_BITS) - 1;
+    private static final int STRIPES = 64;
+
+    private final int rows;
+    private final int columns;
+    private final AtomicReferenceArray<Product> products;
+    private final AtomicIntegerArray stock;
+    private final Object[] locks = new Object[STRIPES];
+    private final Object fillLock = new Object(); // Fills are serialized so two of them never pick the same empty slot
+
+    /**
+     * Constructs a new machine with the given shape.
+     *
+     * @param rows    The number of rows of the machine.
+     * @param columns The number of columns of the machine.
+     */
+    ConcurrentGMMMachine(int rows, int columns) {
+        if (rows <= 0 || columns <= 0 || (long) rows * columns > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid machine shape: " + rows + "x" + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        products = new AtomicReferenceArray<>(rows * columns);
+        stock = new AtomicIntegerArray(rows * columns);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Fills a slot in the vending machine with a product, choosing the slot as {@link GMMMachine#fill} does.
+     *
+     * @param product The product to be loaded into the vending machine.
+     * @return An integer indicating the status of the operation:
+     *         0 - Product loaded successfully,
+     *         1 - Still slots available,
+     *        -1 - Machine is full.
+     */
+    public int fill(Product product) {
+        synchronized (fillLock) {
+            boolean available = false;
+            for (int slot = 0; slot < products.length(); slot++) {
+                synchronized (lockOf(slot)) {
+                    Product slotProduct = products.get(slot);
+                    if (slotProduct == null) {
+                        int word = stock.get(slot);
+                        products.set(slot, product);
+                        stock.set(slot, nextGeneration(word) | 1); // Published after the product, see class comment
+                        return 0;
+                    }
+                    if (slotProduct.getName().equals(product.getName())) {
+                        while (true) {
+                            int word = stock.get(slot);
+                            if ((word & QUANTITY_MASK) >= SLOT_CAPACITY) {
+                                break;
+                            }
+                            if (stock.compareAndSet(slot, word, word + 1)) {
+                                return 0;
+                            }
+                        }
+                    }
+                    available |= (stock.get(slot) & QUANTITY_MASK) < SLOT_CAPACITY;
+                }
+            }
+            return available ? 1 : -1;
+        }
+    }
+
+    /**
+     * Sells a product from the vending machine based on the given purchase information.
+     *
+     * @param purchase The purchase information including the type of purchase, money loaded, choice, and value.
+     * @param messages StringBuilder to store messages related to the purchase process.
+     * @return An integer indicating the status of the sale operation:
+     *         0 - Sale successful,
+     *        -1 - Sale unsuccessful.
+     */
+    public int sellProduct(Purchase purchase, StringBuilder messages) {
+        SaleResult result = sell(purchase, new SaleResult());
+        try {
+            SaleFormatter.format(result, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder never throws
+        }
+        return result.isPurchased() ? 0 : -1;
+    }
+
+    /**
+     * Sells a product from the vending machine and records the outcome without building any text, as
+     * {@link GMMMachine#sell(Purchase, SaleResult)} does.
+     *
+     * @param purchase The purchase information including the type of purchase, money loaded, choice, and value.
+     * @param result   The result to fill in, which can be reused between purchases of the same thread.
+     * @return The given result, holding the status, the slot, the product and the change of the sale.
+     */
+    public SaleResult sell(Purchase purchase, SaleResult result) {
+        Choice choice = purchase.getChoiceCode();
+        switch (choice) {
+            case NUMBER:
+                return sellByNumber(purchase, result);
+            case OTHER:
+                return result.refund(SaleStatus.NOT_FOUND, purchase);
+            default:
+                return sellByNutrient(choice.nutrient(), purchase, result);
+        }
+    }
+
+    private SaleResult sellByNumber(Purchase purchase, SaleResult result) {
+        double value = purchase.getValue();
+        if (value < 0 || value >= rows * columns) {
+            return result.refund(SaleStatus.INVALID_NUMBER, purchase);
+        }
+        int slot = (int) (value / columns) * columns + (int) (value % columns);
+        synchronized (lockOf(slot)) {
+            Product product = products.get(slot);
+            int word = stock.get(slot);
+            if (product == null) {
+                return result.refund(SaleStatus.EMPTY_SLOT, purchase);
+            }
+            if ((word & QUANTITY_MASK) == 0) {
+                return result.refund(SaleStatus.EMPTY_SLOT, slot, product, purchase);
+            }
+            if (purchase.getMoneyMinor() < product.getPriceMinor()) {
+                return result.refund(SaleStatus.INSUFFICIENT_MONEY, slot, product, purchase);
+            }
+            // Nutrient buyers do not lock, so the unit is still taken with a compare-and-set
+            while (!stock.compareAndSet(slot, word, word - 1)) {
+                word = stock.get(slot);
+                if ((word & QUANTITY_MASK) == 0) {
+                    return result.refund(SaleStatus.EMPTY_SLOT, slot, product, purchase);
+                }
+            }
+            if ((word & QUANTITY_MASK) == 1) {
+                clear(slot);
+            }
+            return result.purchased(slot, product, purchase);
+        }
+    }
+
+    private SaleResult sellByNutrient(Nutrient nutrient, Purchase purchase, SaleResult result) {
+        for (int slot = 0; slot < products.length(); slot++) {
+            while (true) {
+                int word = stock.get(slot); // Read before the product, so a product change makes the CAS below fail
+                Product product = products.get(slot);
+                if (product == null || (word & QUANTITY_MASK) == 0
+                        || Math.abs(nutrient.valueOf(product) - purchase.getValue()) > TOLERANCE) {
+                    break;
+                }
+                if (purchase.getMoneyMinor() < product.getPriceMinor()) {
+                    return result.refund(SaleStatus.INSUFFICIENT_MONEY, slot, product, purchase);
+                }
+                if (stock.compareAndSet(slot, word, word - 1)) {
+                    if ((word & QUANTITY_MASK) == 1) {
+                        synchronized (lockOf(slot)) {
+                            clear(slot);
+                        }
+                    }
+                    return result.purchased(slot, product, purchase);
+                }
+                // Another thread changed the slot in between, so it is read again
+            }
+        }
+        return result.refund(SaleStatus.NOT_FOUND, purchase);
+    }
+
+    /**
+     * Clears a slot if it is sold out.
+     *
+     * @param row    The row index of the slot to be cleared.
+     * @param column The column index of the slot to be cleared.
+     * @return An integer indicating the status of the operation:
+     *         0 - Slot cleared successfully,
+     *         1 - Slot not empty or does not exist.
+     */
+    public int clearSlot(int row, int column) {
+        int slot = row * columns + column;
+        synchronized (lockOf(slot)) {
+            return clear(slot) ? 0 : 1;
+        }
+    }
+
+    /**
+     * Removes the product of a sold out slot. The caller must hold the lock of the slot.
+     *
+     * @return True if the slot was cleared, false if it was empty or still has stock.
+     */
+    private boolean clear(int slot) {
+        int word = stock.get(slot);
+        if (products.get(slot) == null || (word & QUANTITY_MASK) != 0) {
+            return false;
+        }
+        // A fill may only add units under the same lock, so the quantity stays 0 until the generation changes
+        stock.set(slot, nextGeneration(word));
+        products.set(slot, null);
+        return true;
+    }
+
+    /**
+     * Gets the number of units left in a slot.
+     *
+     * @param slot The slot index in row-major order.
+     * @return The quantity in the slot.
+     */
+    int getQuantity(int slot) {
+        return stock.get(slot) & QUANTITY_MASK;
+    }
+
+    private static int nextGeneration(int word) {
+        return (word & ~QUANTITY_MASK) + (1 << QUANTITY_BITS);
+    }
+
+    private Object lockOf(int slot) {
+        return locks[slot & (STRIPES - 1)];
+    }
+
+    /**
+     * Returns a string representation of the machine in the same format as {@link GMMMachine#toString()}.
+     *
+     * @return A string containing the details of the products loaded in the vending machine.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(GMMMachine.HEADER);
+        for (int slot = 0; slot < products.length(); slot++) {
+            Product product = products.get(slot);
+            if (product != null) {
+                GMMMachine.appendSlot(sb, product, getQuantity(slot));
+            } else {
+                sb.append(GMMMachine.EMPTY_SLOT);
+            }
+            if ((slot + 1) % columns == 0) {
+                sb.append("\n");
+            }
+        }
+        sb.append(GMMMachine.FOOTER);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * The DenseSlotStore class keeps the products of all slots in a single array.
+ * It is the best choice for machines whose slots are mostly filled.
+ */
+class DenseSlotStore implements SlotStore {
+    private final Product[] slots;
+
+    /**
+     * Constructs an empty store with the given number of slots.
+     *
+     * @param capacity The number of slots.
+     */
+    DenseSlotStore(int capacity) {
+        slots = new Product[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    @Override
+    public Product get(int slot) {
+        return slots[slot];
+    }
+
+    @Override
+    public void set(int slot, Product product) {
+        slots[slot] = product;
+    }
+
+    @Override
+    public SlotStore copy() {
+        DenseSlotStore copy = new DenseSlotStore(slots.length);
+        System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+        return copy;
+    }
+}
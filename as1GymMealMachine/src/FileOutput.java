@@ -1,6 +1,4 @@
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 
 public class FileOutput {
     /**
@@ -12,17 +10,13 @@ public class FileOutput {
      * @param newLine True if wanted to append a new line after content, false if vice versa.
      */
     public static void writeToFile(String path, String content, boolean append, boolean newLine) {
-        PrintStream ps = null;
-        try {
-            ps = new PrintStream(new FileOutputStream(path, append));
-            ps.print(content + (newLine ? "\n" : ""));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            if (ps != null) { //Flushes all the content and closes the stream if it has been successfully created.
-                ps.flush();
-                ps.close();
+        try (ChannelFileOutput output = ChannelFileOutput.open(path, append)) {
+            output.append(content);
+            if (newLine) {
+                output.write('\n');
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The FleetRunner class runs many Gym Meal Machines at once, one task per machine on a work-stealing pool.
+ * Each machine reads its own product and purchase files and writes its own output file, exactly as a separate
+ * {@link Main} run would, so the purchases of a machine are still processed in order.
+ */
+public class FleetRunner {
+
+    /**
+     * The main method of the fleet runner.
+     *
+     * @param args Command-line arguments. Expects the path of a manifest file, with one machine per line in the form
+     * "product file TAB purchase file TAB output file". Relative paths are resolved against the folder of the manifest.
+     * An optional second argument sets the number of worker threads; it defaults to the number of processors.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String[] lines = FileInput.readFile(args[0], true, true);
+        if (lines == null) {
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path folder = Paths.get(args[0]).toAbsolutePath().getParent();
+
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (String line : lines) {
+            String[] files = line.split("\t");
+            if (files.length < 3) {
+                System.out.println("INFO: Invalid manifest line: " + line);
+                continue;
+            }
+            String product = folder.resolve(files[0]).toString();
+            String purchase = folder.resolve(files[1]).toString();
+            String output = folder.resolve(files[2]).toString();
+            results.add(pool.submit(() -> runMachine(product, purchase, output)));
+        }
+        pool.shutdown();
+
+        StringBuilder summary = new StringBuilder();
+        for (Future<String> result : results) {
+            try {
+                summary.append(result.get()).append("\n");
+            } catch (ExecutionException e) {
+                summary.append("FAILED: ").append(e.getCause()).append("\n");
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        summary.append(String.format(Locale.ROOT, "FLEET: %d machines in %.3f s", results.size(), seconds));
+        System.out.println(summary);
+    }
+
+    /**
+     * Runs one machine and describes how fast it went.
+     *
+     * @return A summary line with the number of purchases and the throughput of the machine.
+     */
+    private static String runMachine(String productPath, String purchasePath, String outputPath) {
+        long start = System.nanoTime();
+        long purchases = Main.runStreaming(productPath, purchasePath, outputPath, false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (purchases < 0) {
+            return "FAILED: " + outputPath;
+        }
+        return String.format(Locale.ROOT, "MACHINE: %s - %d purchases in %.3f s (%.0f purchases/s)",
+                outputPath, purchases, seconds, purchases / seconds);
+    }
+}
@@ -1,18 +1,289 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The GMM (Gym Meal Machine) class represents a vending machine that sells gym meals.
  * It manages the loading of products into slots, selling products, and clearing slots when they become empty.
  */
 class GMMMachine {
-    private Product[][] slots;
-    private final int ROWS = 6;
-    private final int COLUMNS = 4;
+    private final SlotStore slots;
+    private final int rows;
+    private final int columns;
+    private static final double TOLERANCE = 5;
+    static final int SLOT_CAPACITY = 10; // Units one slot can hold
+    private static final int SPARSE_THRESHOLD = 4096; // Machines with more slots than this use the sparse store
+    private static final int INDEX_THRESHOLD = 512; // Machines with more slots than this use the nutrient indexes
+    private final boolean indexed; // True if nutrient purchases use the nutrient indexes
+    private NutrientIndex[] indexes; // One index per nutrient, null if nutrient purchases scan the slots linearly
+    private final BitSet occupied = new BitSet(); // Slots holding a product, sold out or not
+    private final BitSet stocked = new BitSet(); // Slots holding at least one unit
+    private final BitSet drained = new BitSet(); // Sold out slots, cleared by the next nutrient scan passing them
+    private final BitSet shared = new BitSet(); // Slots whose product object another machine holds as well
+    private int firstEmpty; // Smallest slot index that holds no product
+    private final Map<String, SlotQueue> fillable = new HashMap<>(); // Not full slots of each product, may hold stale entries
+    private int availableSlots; // Slots that can still take one more unit
+    private MachineListener listener; // Told about every change of a slot, null if nobody listens
+    private MachineMetrics metrics; // Records every fill and sale, null if the machine is not measured
+    private MoneyLedger ledger; // Adds up the money of every sale, null if the run is not reconciled
+    private int scanned; // Slots examined by the last nutrient lookup, for the metrics
+    private boolean closestMatch; // True if nutrient purchases sell the closest product instead of the first one
+    private ClosestMatchIndex closestIndex; // Stocked slots by all nutrients, null until a vector purchase needs it
+    private final double[] values = new double[Nutrient.values().length]; // Values of one slot, for the closest index
+    private String[] fragments; // Rendered text of each occupied slot, null until the machine is first rendered
+    private final BitSet dirty = new BitSet(); // Slots changed since their fragment was rendered
+    private final StringBuilder rendering = new StringBuilder(); // Reused by toString
+    static final String HEADER = "-----Gym Meal Machine-----\n"; // First line of the rendering
+    static final String EMPTY_SLOT = "___(0, 0)___"; // Rendering of a slot without a product
+    static final String FOOTER = "----------"; // Last line of the rendering
     /**
      * Constructs a new GMM (Gym Meal Machine) object with an array of slots.
-     * The number of rows and columns is predefined.
+     * The machine has the standard shape of 6 rows and 4 columns.
      */
     public GMMMachine() {
-        slots = new Product[ROWS][COLUMNS];
+        this(6, 4);
+    }
+    /**
+     * Constructs a new GMM (Gym Meal Machine) object with the given shape.
+     * Small machines keep their slots in an array, large ones in a hash table holding only the filled slots.
+     * Nutrient purchases scan the stocked slots of small machines, which is faster than keeping the nutrient
+     * indexes up to date there, and use the indexes on large ones.
+     *
+     * @param rows    The number of rows of the machine.
+     * @param columns The number of columns of the machine.
+     */
+    public GMMMachine(int rows, int columns) {
+        this(rows, columns, (long) rows * columns > SPARSE_THRESHOLD, (long) rows * columns > INDEX_THRESHOLD);
+    }
+    /**
+     * Constructs a new GMM (Gym Meal Machine) object with the standard shape.
+     *
+     * @param indexed True if nutrient purchases should use the nutrient indexes, false if they should scan every slot.
+     */
+    GMMMachine(boolean indexed) {
+        this(6, 4, false, indexed);
+    }
+    /**
+     * Constructs a new GMM (Gym Meal Machine) object with the given shape and slot storage.
+     *
+     * @param rows    The number of rows of the machine.
+     * @param columns The number of columns of the machine.
+     * @param sparse  True if the slots should be kept in a hash table, false if they should be kept in an array.
+     * @param indexed True if nutrient purchases should use the nutrient indexes, false if they should scan every slot.
+     */
+    GMMMachine(int rows, int columns, boolean sparse, boolean indexed) {
+        this(rows, columns, checkShape(rows, columns) && sparse ? new SparseSlotStore(rows * columns)
+                : new DenseSlotStore(rows * columns), indexed);
+    }
+    /**
+     * Constructs a new GMM (Gym Meal Machine) object with the given shape, keeping its slots in the given store.
+     *
+     * @param rows    The number of rows of the machine.
+     * @param columns The number of columns of the machine.
+     * @param slots   An empty store with {@code rows * columns} slots.
+     * @param indexed True if nutrient purchases should use the nutrient indexes, false if they should scan every slot.
+     */
+    GMMMachine(int rows, int columns, SlotStore slots, boolean indexed) {
+        checkShape(rows, columns);
+        if (slots.capacity() != rows * columns) {
+            throw new IllegalArgumentException("The store has " + slots.capacity() + " slots, not " + rows * columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.slots = slots;
+        availableSlots = rows * columns;
+        this.indexed = indexed;
+        if (indexed) {
+            createIndexes();
+        }
+    }
+    /**
+     * Constructs a copy of a machine, see {@link #copy()}.
+     *
+     * @param source The machine to copy.
+     */
+    private GMMMachine(GMMMachine source) {
+        rows = source.rows;
+        columns = source.columns;
+        slots = source.slots.copy();
+        indexed = source.indexed;
+        occupied.or(source.occupied); // The sets of a new machine are empty, so this copies them
+        stocked.or(source.stocked);
+        drained.or(source.drained);
+        firstEmpty = source.firstEmpty;
+        availableSlots = source.availableSlots;
+        closestMatch = source.closestMatch;
+        source.fillable.forEach((name, queue) -> fillable.put(name, queue.copy()));
+        if (source.indexes != null) {
+            indexes = new NutrientIndex[source.indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = source.indexes[i].copy();
+            }
+        }
+        if (source.fragments != null) {
+            fragments = source.fragments.clone(); // The strings themselves never change
+            dirty.or(source.dirty);
+        }
+        if (slots.sharesProducts()) {
+            // Both machines hold the same products now, so each copies a product before its first change
+            shared.or(occupied);
+            source.shared.clear();
+            source.shared.or(occupied);
+        }
+    }
+    /**
+     * Creates a machine with the same products in the same slots, which can then sell and fill without changing this
+     * one. The copy is cheap: the slot store, bitmaps and indexes are flat arrays copied as a whole, and the product
+     * objects are shared until either machine changes the quantity of one, which copies just that product.
+     * The listener, the metrics and the ledger are not carried over; the closest match index is built again when the
+     * copy needs it.
+     *
+     * @return The copy.
+     */
+    GMMMachine copy() {
+        return new GMMMachine(this);
+    }
+    private static boolean checkShape(int rows, int columns) {
+        if (rows <= 0 || columns <= 0 || (long) rows * columns > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid machine shape: " + rows + "x" + columns);
+        }
+        return true;
+    }
+    private void createIndexes() {
+        indexes = new NutrientIndex[Nutrient.values().length];
+        for (Nutrient nutrient : Nutrient.values()) {
+            indexes[nutrient.ordinal()] = new NutrientIndex();
+        }
+    }
+    /**
+     * Gets the number of rows of the machine.
+     *
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+    /**
+     * Gets the number of columns of the machine.
+     *
+     * @return The number of columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+    /**
+     * Sets the listener that is told about every change of a slot, such as a journal.
+     *
+     * @param listener The listener, or null to stop listening.
+     */
+    void setListener(MachineListener listener) {
+        this.listener = listener;
+    }
+    /**
+     * Sets the metrics that record every fill and sale of the machine.
+     *
+     * @param metrics The metrics, or null to stop measuring.
+     */
+    void setMetrics(MachineMetrics metrics) {
+        this.metrics = metrics;
+    }
+    /**
+     * Sets the ledger that adds up the money of every sale.
+     *
+     * @param ledger The ledger, or null to stop recording.
+     */
+    void setLedger(MoneyLedger ledger) {
+        this.ledger = ledger;
+    }
+    /**
+     * Chooses how nutrient purchases pick their slot. The first match is the original behaviour and the default.
+     *
+     * @param closestMatch True to sell the product whose value is closest to the one asked for, among those within the
+     *                     tolerance; false to sell the first one in row-major order within the tolerance.
+     */
+    void setClosestMatch(boolean closestMatch) {
+        this.closestMatch = closestMatch;
+    }
+    /**
+     * Gets the product in a slot.
+     *
+     * @param slot The slot index in row-major order.
+     * @return The product, sold out or not, or null if the slot is empty.
+     */
+    Product getProduct(int slot) {
+        return slots.get(slot);
+    }
+    /**
+     * Finds the next slot holding a product, sold out or not.
+     *
+     * @param from The slot index to start from.
+     * @return The index of the next slot holding a product, or -1 if there is none.
+     */
+    int nextOccupied(int from) {
+        return occupied.nextSetBit(from);
+    }
+    /**
+     * Stops keeping the nutrient indexes up to date, for a bulk load such as a journal replay where only the final
+     * state matters. Nutrient purchases scan the slots linearly until {@link #rebuildIndexes()} is called.
+     */
+    void suspendIndexes() {
+        indexes = null;
+        closestIndex = null; // Built again by the next vector purchase
+    }
+    /**
+     * Builds the nutrient indexes again from the slots, after {@link #suspendIndexes()}.
+     */
+    void rebuildIndexes() {
+        if (!indexed || indexes != null) {
+            return;
+        }
+        createIndexes();
+        for (int slot = stocked.nextSetBit(0); slot >= 0; slot = stocked.nextSetBit(slot + 1)) {
+            for (Nutrient nutrient : Nutrient.values()) {
+                indexes[nutrient.ordinal()].insert(slot, slots.value(slot, nutrient));
+            }
+        }
+    }
+    /**
+     * Builds the fill bookkeeping again from the slots: the first empty slot and the not full slots of each product.
+     * Needed after slots were loaded at given positions rather than by {@link #fill(Product)}, as from a snapshot.
+     */
+    void rebuildFillState() {
+        firstEmpty = occupied.nextClearBit(0);
+        fillable.clear();
+        for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1)) {
+            if (slots.quantity(slot) < SLOT_CAPACITY) {
+                fillable.computeIfAbsent(slots.get(slot).getName(), name -> new SlotQueue()).add(slot);
+            }
+        }
+    }
+    /**
+     * Takes one unit out of a slot, as a sale from that slot would.
+     *
+     * @param slot The slot index in row-major order, which must hold a product that is not sold out.
+     */
+    void takeOne(int slot) {
+        sold(slot, slots.get(slot));
+    }
+    /**
+     * Gives the machine its own copy of the product in a slot, if the product is shared with another machine, so its
+     * quantity can be changed.
+     *
+     * @param slot    The slot index in row-major order.
+     * @param product The product in that slot.
+     * @return The product to change, which is the given one unless it was shared.
+     */
+    private Product own(int slot, Product product) {
+        if (!shared.get(slot)) {
+            return product;
+        }
+        shared.clear(slot);
+        Product own = product.copy();
+        slots.set(slot, own);
+        return own;
     }
     /**
      * Fills a slot in the vending machine with a product.
@@ -24,37 +295,83 @@ class GMMMachine {
      *        -1 - Machine is full.
      */
     public int fill(Product product) {
-        // Find an empty slot or a slot with the same product
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLUMNS; j++) {
-                if (slots[i][j] == null || slots[i][j].getName().equals(product.getName())) {
-                    // If the slot is empty or contains the same product, check if there is enough capacity
-                    if (slots[i][j] == null || slots[i][j].getQuantity() < 10) {
-                        // Add the product to the slot
-                        if (slots[i][j] == null) {
-                            slots[i][j] = product;
-                        } else {
-                            slots[i][j].increaseQuantity();
-                        }
-                        // Product loaded successfully
-                        return 0;
-                    }
-                }
+        int status = fillSlot(product);
+        if (metrics != null) {
+            metrics.recordFill(status);
+        }
+        return status;
+    }
+    private int fillSlot(Product product) {
+        // The first empty slot and the first not full slot with the same product are the candidates the
+        // row-major scan would meet; the smaller one of them is where the product goes.
+        int slot = firstEmpty;
+        SlotQueue sameProduct = fillable.get(product.getName());
+        if (sameProduct != null) {
+            // Drop the slots that have become full or hold another product since they were queued
+            while (!sameProduct.isEmpty() && !canTakeMore(sameProduct.peek(), product.getName())) {
+                sameProduct.poll();
+            }
+            if (!sameProduct.isEmpty() && sameProduct.peek() < slot) {
+                slot = sameProduct.peek();
             }
         }
-
+        if (slot < slots.capacity()) {
+            loadInto(slot, product);
+            // Product loaded successfully
+            return 0;
+        }
         // Check if there are still available slots
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLUMNS; j++) {
-                if (slots[i][j] == null || slots[i][j].getQuantity() < 10) {
-                    return 1; // Still slots available
-                }
-            }
+        if (availableSlots > 0) {
+            return 1; // Still slots available
         }
-
-        // If machine is full, write to file
         return -1; // Machine is full
     }
+    /**
+     * Loads one unit into a slot that is empty or holds the same product and is not full.
+     *
+     * @param slot    The slot index in row-major order.
+     * @param product The product to place if the slot is empty; not used if the slot already holds a product.
+     */
+    void loadInto(int slot, Product product) {
+        Product slotProduct = slots.get(slot);
+        // Add the product to the slot
+        if (slotProduct == null) {
+            slotProduct = product;
+            slots.set(slot, slotProduct);
+            occupied.set(slot);
+            if (slot == firstEmpty) { // A slot loaded out of fill order leaves the empty slots before it
+                firstEmpty = occupied.nextClearBit(slot + 1);
+            }
+            fillable.computeIfAbsent(product.getName(), name -> new SlotQueue()).add(slot);
+            if (listener != null) {
+                listener.onPlace(slot, slotProduct);
+            }
+        } else {
+            slotProduct = own(slot, slotProduct);
+            slotProduct.increaseQuantity();
+            if (listener != null) {
+                listener.onRestock(slot);
+            }
+        }
+        if (slotProduct.getQuantity() == 1) {
+            restocked(slot);
+        }
+        if (slotProduct.getQuantity() == SLOT_CAPACITY) {
+            availableSlots--;
+        }
+        changed(slot);
+    }
+    /**
+     * Checks whether a slot holds the given product and can take one more unit of it.
+     *
+     * @param slot The slot index in row-major order.
+     * @param name The name of the product.
+     * @return True if the slot can take one more unit, false otherwise.
+     */
+    private boolean canTakeMore(int slot, String name) {
+        Product slotProduct = slots.get(slot);
+        return slotProduct != null && slotProduct.getQuantity() < SLOT_CAPACITY && slotProduct.getName().equals(name);
+    }
     /**
      * Sells a product from the vending machine based on the given purchase information.
      *
@@ -65,207 +382,103 @@ class GMMMachine {
      *        -1 - Sale unsuccessful.
      */
     public int sellProduct(Purchase purchase, StringBuilder messages) {
-        if (purchase.getChoice().equals("NUMBER")) {
-            if (purchase.getValue() > 24) {
-                messages.append("INFO: Number cannot be accepted. Please try again with another number.\n");
-                messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                return -1;
-            }
-            else {
-                double value = purchase.getValue();
-
-                int row = (int) (value / 4);
-                int column = (int) (value % 4);
-
-
-
-                if (slots[row][column] != null) {
-                    if (slots[row][column].getQuantity() > 0) {
-                        if (purchase.getMoneyLoaded() >= slots[row][column].getPrice()) {
-                            messages.append("PURCHASE: You have bought one " + slots[row][column].getName() + "\n");
-                            slots[row][column].decreaseQuantity();// Decrease the quantity of the sold product
-
-                            double change = purchase.getMoneyLoaded() - slots[row][column].getPrice();
-                            int changeInteger = (int) change;
-                            messages.append("RETURN: Returning your change: " + changeInteger + " TL\n");
-
-                            return 0; // Sale successful
-                        } else {
-                            messages.append("INFO: Insufficient money, try again with more money.\n");
-                            messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                            return -1;
-                        }
-                    } else {
-                        messages.append("INFO: This slot is empty, your money will be returned.\n");
-                        messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                        return -1;
-                    }
-                } else {
-                    messages.append("INFO: This slot is empty, your money will be returned.\n");
-                    messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                    return -1;
-                }
+        SaleResult result = sell(purchase, new SaleResult());
+        try {
+            SaleFormatter.format(result, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder never throws
+        }
+        return result.isPurchased() ? 0 : -1;
+    }
+    /**
+     * Sells the products of many purchases, in order, as if {@link #sell(Purchase, SaleResult)} was called for each.
+     *
+     * @param purchases The purchases, in the order they are made.
+     * @param results   The results of the sales; the entry of each purchase is reused if it exists, else added.
+     * @return The number of successful sales.
+     */
+    public int sellBatch(List<Purchase> purchases, List<SaleResult> results) {
+        int purchased = 0;
+        for (int i = 0; i < purchases.size(); i++) {
+            if (i == results.size()) {
+                results.add(new SaleResult());
             }
-        }else if (purchase.getChoice().equals("CARB")) {
-            for (int i = 0; i < ROWS; i++) {
-                for (int j = 0; j < COLUMNS; j++) {
-                    if (slots[i][j] != null) {
-                        int resultClear =clearSlot(i, j);
-                        if(resultClear == 0){
-                            continue;
-                        }
-
-                        double difference = Math.abs(slots[i][j].getCarbohydrate() - purchase.getValue());
-                        if (difference <= 5) {
-                            if (slots[i][j].getQuantity() > 0) {
-
-                                if (purchase.getMoneyLoaded() >= slots[i][j].getPrice()) {
-                                    messages.append("PURCHASE: You have bought one " + slots[i][j].getName() + "\n");
-                                    slots[i][j].decreaseQuantity(); // Decrease the quantity of the sold product
-                                    double change = purchase.getMoneyLoaded() - slots[i][j].getPrice();
-                                    int changeInteger = (int) change;
-                                    messages.append("RETURN: Returning your change: " +  changeInteger + " TL\n");
-                                    return 0; // Sale successful
-
-                                }
-                                else {
-                                    messages.append("INFO: Insufficient money, try again with more money.\n");
-                                    messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                    return -1;
-                                }
-                            }
-                            else {
-                                messages.append("INFO: This slot is empty, your money will be returned.\n");
-                                messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                return -1;
-                            }
-                        }
-                    }
-                }
-            }
-        } else if (purchase.getChoice().equals("PROTEIN")) {
-            for (int i = 0; i < ROWS; i++) {
-                for (int j = 0; j < COLUMNS; j++) {
-                    if (slots[i][j] != null) {
-                        int resultClear =clearSlot(i, j);
-                        if(resultClear == 0){
-                            continue;
-                        }
-
-                        double difference = Math.abs(slots[i][j].getProtein() - purchase.getValue());
-                        if (difference <= 5) {
-                            if (slots[i][j].getQuantity() > 0) {
-
-                                if (purchase.getMoneyLoaded() >= slots[i][j].getPrice()) {
-                                    messages.append("PURCHASE: You have bought one " + slots[i][j].getName() + "\n");
-                                    slots[i][j].decreaseQuantity(); // Decrease the quantity of the sold product
-
-                                    double change = purchase.getMoneyLoaded() - slots[i][j].getPrice();
-                                    int changeInteger = (int) change;
-                                    messages.append("RETURN: Returning your change: " +  changeInteger + " TL\n");
-                                    return 0; // Sale successful
-                                }
-                                else {
-                                    messages.append("INFO: Insufficient money, try again with more money.\n");
-                                    messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                    return -1;
-                                }
-                            }
-                            else {
-                                messages.append("INFO: This slot is empty, your money will be returned.\n");
-                                messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                return -1;
-                            }
-                        }
-                    }
-                }
+            if (sell(purchases.get(i), results.get(i)).isPurchased()) {
+                purchased++;
             }
         }
-        else if (purchase.getChoice().equals("FAT")) {
-            for (int i = 0; i < ROWS; i++) {
-                for (int j = 0; j < COLUMNS; j++) {
-                    if (slots[i][j] != null) {
-                        int resultClear =clearSlot(i, j);
-                        if(resultClear == 0){
-                            continue;
-                        }
-
-                        double difference = Math.abs(slots[i][j].getFat() - purchase.getValue());
-                        if (difference <= 5) {
-                            if (slots[i][j].getQuantity() > 0) {
-
-                                if (purchase.getMoneyLoaded() >= slots[i][j].getPrice()) {
-                                    messages.append("PURCHASE: You have bought one " + slots[i][j].getName() + "\n");
-                                    slots[i][j].decreaseQuantity(); // Decrease the quantity of the sold product
-
-                                    double change = purchase.getMoneyLoaded() - slots[i][j].getPrice();
-                                    int changeInteger = (int) change;
-                                    messages.append("RETURN: Returning your change: " +  changeInteger + " TL\n");
-                                    return 0; // Sale successful
-                                }
-                                else {
-                                    messages.append("INFO: Insufficient money, try again with more money.\n");
-                                    messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                    return -1;
-                                }
-                            }
-                            else {
-                                messages.append("INFO: This slot is empty, your money will be returned.\n");
-                                messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                return -1;
-                            }
-
-                        }
-                    }
-                }
-            }
+        return purchased;
+    }
+    /**
+     * Sells a product from the vending machine and records the outcome without building any text,
+     * so callers that only need the result do not pay for the messages.
+     *
+     * @param purchase The purchase information including the type of purchase, money loaded, choice, and value.
+     * @param result   The result to fill in, which can be reused between purchases.
+     * @return The given result, holding the status, the slot, the product and the change of the sale.
+     */
+    public SaleResult sell(Purchase purchase, SaleResult result) {
+        if (metrics == null) {
+            sellFromSlots(purchase, result);
+        } else if (!metrics.sample()) {
+            metrics.recordSale(sellFromSlots(purchase, result));
+        } else {
+            long start = System.nanoTime();
+            sellFromSlots(purchase, result);
+            long nanos = System.nanoTime() - start;
+            metrics.recordSample(purchase.getChoiceCode(), result, nanos, scanned);
         }
-        else if (purchase.getChoice().equals("CALORIE")) {
-            for (int i = 0; i < ROWS; i++) {
-                for (int j = 0; j < COLUMNS; j++) {
-                    if (slots[i][j] != null) {
-                        int resultClear =clearSlot(i, j);
-                        if(resultClear == 0){
-                            continue;
-                        }
-
-
-                        double difference = Math.abs(slots[i][j].getCalories() - purchase.getValue());
-                        if (difference <= 5) {
-                            if (slots[i][j].getQuantity() > 0) {
-                                resultClear =clearSlot(i, j);
-                                if(resultClear == 0){
-                                    continue;
-                                }
-
-                                if (purchase.getMoneyLoaded() >= slots[i][j].getPrice()) {
-                                    messages.append("PURCHASE: You have bought one " + slots[i][j].getName() + "\n");
-                                    slots[i][j].decreaseQuantity(); // Decrease the quantity of the sold product
+        if (ledger != null) {
+            ledger.record(purchase, result);
+        }
+        return result;
+    }
+    private SaleResult sellFromSlots(Purchase purchase, SaleResult result) {
+        // The choice was resolved when the purchase was parsed, so this is a switch on its ordinal instead of string
+        // comparisons. All nutrient choices go through one direct call; the nutrient only selects an index or column.
+        Choice choice = purchase.getChoiceCode();
+        switch (choice) {
+            case NUMBER:
+                return sellByNumber(purchase, result);
+            case OTHER:
+                return result.refund(SaleStatus.NOT_FOUND, purchase);
+            default:
+                return sellByNutrient(choice.nutrient(), purchase, result);
+        }
+    }
+    /**
+     * Sells the product in the slot a NUMBER purchase asks for.
+     *
+     * @param purchase The purchase information.
+     * @param result   The result to fill in.
+     * @return The given result.
+     */
+    private SaleResult sellByNumber(Purchase purchase, SaleResult result) {
+        double value = purchase.getValue();
+        if (value < 0 || value >= rows * columns) { // Slots are numbered from 0, so the capacity itself is no slot
+            return result.refund(SaleStatus.INVALID_NUMBER, purchase);
+        }
+        else {
+            int row = (int) (value / columns);
+            int column = (int) (value % columns);
+            Product product = slots.get(row * columns + column);
 
-                                    double change = purchase.getMoneyLoaded() - slots[i][j].getPrice();
-                                    int changeInteger = (int) change;
-                                    messages.append("RETURN: Returning your change: " +  changeInteger + " TL\n");
-                                    return 0; // Sale successful
-                                }
-                                else {
-                                    messages.append("INFO: Insufficient money, try again with more money.\n");
-                                    messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                    return -1;
-                                }
-                            }
-                            else {
-                                messages.append("INFO: This slot is empty, your money will be returned.\n");
-                                messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-                                return -1;
-                            }
-                        }
+            if (product != null) {
+                if (product.getQuantity() > 0) {
+                    if (purchase.getMoneyMinor() >= product.getPriceMinor()) {
+                        product = sold(row * columns + column, product); // Decrease the quantity of the sold product
+                        return result.purchased(row * columns + column, product, purchase); // Sale successful
+                    } else {
+                        return result.refund(SaleStatus.INSUFFICIENT_MONEY, row * columns + column, product,
+                                purchase);
                     }
+                } else {
+                    return result.refund(SaleStatus.EMPTY_SLOT, row * columns + column, product, purchase);
                 }
+            } else {
+                return result.refund(SaleStatus.EMPTY_SLOT, purchase);
             }
         }
-        messages.append("INFO: Product not found, your money will be returned.\n");
-        messages.append("RETURN: Returning your change: " + purchase.getMoneyLoaded() + " TL\n");
-        return -1; // Sale unsuccessful
     }
     /**
      * Clears a slot in the vending machine.
@@ -277,16 +490,237 @@ class GMMMachine {
      *         1 - Slot not empty or does not exist.
      */
     public int clearSlot(int row, int column) {
-        if (slots[row][column] != null && slots[row][column].getQuantity() == 0) {
-            slots[row][column] = null;
+        int slot = row * columns + column;
+        if (!slots.isEmpty(slot) && slots.quantity(slot) == 0) {
+            slots.set(slot, null);
+            occupied.clear(slot);
+            drained.clear(slot);
+            shared.clear(slot);
+            changed(slot);
+            firstEmpty = Math.min(firstEmpty, slot);
+            if (listener != null) {
+                listener.onClear(slot);
+            }
             return 0;
         }
         return 1;
     }
+    /**
+     * Sells a product chosen by a nutritional value.
+     * The first stocked slot in row-major order within the tolerance is chosen, or in closest match mode the one with
+     * the closest value, found with the nutrient index of the machine or by walking the stocked slots. The sold out
+     * slots before it, or all of them if nothing matched, are cleared, as the original scan of every slot cleared the
+     * sold out slots it passed.
+     *
+     * @param nutrient The nutrient the customer has chosen.
+     * @param purchase The purchase information.
+     * @param result   The result to fill in.
+     * @return The given result.
+     */
+    private SaleResult sellByNutrient(Nutrient nutrient, Purchase purchase, SaleResult result) {
+        int slot;
+        if (indexes != null) {
+            NutrientIndex index = indexes[nutrient.ordinal()];
+            slot = closestMatch ? index.closestWithin(purchase.getValue(), TOLERANCE)
+                    : index.firstWithin(purchase.getValue(), TOLERANCE);
+            scanned = index.lastCandidates();
+        } else {
+            slot = firstStockedWithin(nutrient, purchase.getValue());
+        }
+        // Clear the sold out slots before the match, or all of them if nothing matched. A closest match looks at
+        // every slot, so it clears them all.
+        clearDrainedBefore(slot < 0 || closestMatch ? slots.capacity() : slot);
+        return sellFrom(slot, purchase, result);
+    }
+    /**
+     * Sells the product closest to a target over several nutrients, by the weighted squared distance
+     * {@code sum of weights[i] * (value[i] - target[i])^2}, with no tolerance. Among equally close products the first
+     * slot in row-major order wins. The choice and the value of the purchase are not used.
+     *
+     * @param target   The values asked for, by {@link Nutrient} ordinal; all of them finite.
+     * @param weights  The weight of each nutrient, by {@link Nutrient} ordinal; a weight of 0 ignores that nutrient.
+     *                 The weights must be finite and not negative.
+     * @param purchase The purchase information, of which only the money is used.
+     * @param result   The result to fill in.
+     * @return The given result.
+     * @throws IllegalArgumentException If there is not one target and one weight for every nutrient, or one of them
+     *                                  is invalid.
+     */
+    public SaleResult sellClosest(double[] target, double[] weights, Purchase purchase, SaleResult result) {
+        if (target.length != values.length || weights.length != values.length) {
+            throw new IllegalArgumentException("One target and one weight are needed for every nutrient, got "
+                    + target.length + " targets and " + weights.length + " weights");
+        }
+        for (int i = 0; i < values.length; i++) {
+            // A negative weight rewards distance, and a NaN or infinite value makes the distances NaN
+            if (!(weights[i] >= 0) || weights[i] == Double.POSITIVE_INFINITY) {
+                throw new IllegalArgumentException("Invalid weight for " + Nutrient.values()[i] + ": " + weights[i]);
+            }
+            if (!Double.isFinite(target[i])) {
+                throw new IllegalArgumentException("Invalid target for " + Nutrient.values()[i] + ": " + target[i]);
+            }
+        }
+        if (closestIndex == null) {
+            closestIndex = new ClosestMatchIndex();
+            for (int slot = stocked.nextSetBit(0); slot >= 0; slot = stocked.nextSetBit(slot + 1)) {
+                closestIndex.insert(slot, valuesOf(slot));
+            }
+        }
+        int slot = closestIndex.closest(target, weights);
+        scanned = closestIndex.lastCandidates();
+        clearDrainedBefore(slots.capacity());
+        sellFrom(slot, purchase, result);
+        if (metrics != null) {
+            metrics.recordSale(result);
+        }
+        if (ledger != null) {
+            ledger.record(purchase, result);
+        }
+        return result;
+    }
+    /**
+     * Clears the sold out slots before the given one.
+     *
+     * @param limit The slot index to stop at.
+     */
+    private void clearDrainedBefore(int limit) {
+        for (int i = drained.nextSetBit(0); i >= 0 && i < limit; i = drained.nextSetBit(i + 1)) {
+            clearSlot(i / columns, i % columns);
+            scanned++;
+        }
+    }
+    /**
+     * Sells from the slot a nutrient lookup has chosen.
+     *
+     * @param slot     The slot index in row-major order, or -1 if nothing was found.
+     * @param purchase The purchase information.
+     * @param result   The result to fill in.
+     * @return The given result.
+     */
+    private SaleResult sellFrom(int slot, Purchase purchase, SaleResult result) {
+        if (slot < 0) {
+            return result.refund(SaleStatus.NOT_FOUND, purchase); // Sale unsuccessful
+        }
+        Product product = slots.get(slot);
+        if (purchase.getMoneyMinor() >= product.getPriceMinor()) {
+            product = sold(slot, product); // Decrease the quantity of the sold product
+            return result.purchased(slot, product, purchase); // Sale successful
+        }
+        return result.refund(SaleStatus.INSUFFICIENT_MONEY, slot, product, purchase);
+    }
+    /**
+     * Walks the stocked slots in row-major order, skipping empty and sold out slots without reading them.
+     *
+     * @param nutrient The nutrient to compare.
+     * @param value    The value asked for.
+     * @return The first stocked slot whose value is within the tolerance, or the closest one in closest match mode;
+     *         -1 if there is none.
+     */
+    private int firstStockedWithin(Nutrient nutrient, double value) {
+        scanned = 0;
+        int closest = -1;
+        double closestDifference = Double.POSITIVE_INFINITY;
+        for (int slot = stocked.nextSetBit(0); slot >= 0; slot = stocked.nextSetBit(slot + 1)) {
+            scanned++;
+            double difference = Math.abs(slots.value(slot, nutrient) - value);
+            if (difference <= TOLERANCE) {
+                if (!closestMatch) {
+                    return slot;
+                }
+                if (difference < closestDifference) {
+                    closest = slot;
+                    closestDifference = difference;
+                }
+            }
+        }
+        return closest;
+    }
+    /**
+     * Takes one unit out of a slot and updates the bookkeeping of the machine.
+     *
+     * @param slot    The slot index in row-major order.
+     * @param product The product in that slot.
+     * @return The product that was sold, which is a copy of the given one if that was shared with another machine.
+     */
+    private Product sold(int slot, Product product) {
+        product = own(slot, product);
+        product.decreaseQuantity();
+        changed(slot);
+        if (listener != null) {
+            listener.onSale(slot);
+        }
+        if (product.getQuantity() == SLOT_CAPACITY - 1) {
+            availableSlots++;
+            fillable.computeIfAbsent(product.getName(), name -> new SlotQueue()).add(slot);
+        }
+        if (product.getQuantity() == 0) {
+            soldOut(slot);
+        }
+        return product;
+    }
+    /**
+     * Marks a slot that has just got its first unit as stocked and adds it to the nutrient indexes.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    private void restocked(int slot) {
+        stocked.set(slot);
+        drained.clear(slot);
+        if (closestIndex != null) {
+            closestIndex.insert(slot, valuesOf(slot));
+        }
+        if (indexes == null) {
+            return;
+        }
+        for (Nutrient nutrient : Nutrient.values()) {
+            indexes[nutrient.ordinal()].insert(slot, slots.value(slot, nutrient));
+        }
+    }
+    /**
+     * Marks a slot that has just sold its last unit as sold out and removes it from the nutrient indexes.
+     * The product stays in the slot, and is shown by {@link #toString()}, until a nutrient scan clears it.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    private void soldOut(int slot) {
+        stocked.clear(slot);
+        drained.set(slot);
+        if (closestIndex != null) {
+            closestIndex.remove(slot, valuesOf(slot));
+        }
+        if (indexes == null) {
+            return;
+        }
+        for (Nutrient nutrient : Nutrient.values()) {
+            indexes[nutrient.ordinal()].remove(slot, slots.value(slot, nutrient));
+        }
+    }
 
 
 
 
+    /**
+     * Reads the nutritional values of a slot into a shared array.
+     *
+     * @param slot The slot index in row-major order.
+     * @return The values by {@link Nutrient} ordinal, valid until the next call.
+     */
+    private double[] valuesOf(int slot) {
+        for (Nutrient nutrient : Nutrient.values()) {
+            values[nutrient.ordinal()] = slots.value(slot, nutrient);
+        }
+        return values;
+    }
+    /**
+     * Marks the rendered text of a slot as out of date.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    private void changed(int slot) {
+        if (fragments != null) {
+            dirty.set(slot);
+        }
+    }
     /**
      * Returns a string representation of the GMM (Gym Meal Machine) object.
      *
@@ -294,25 +728,66 @@ class GMMMachine {
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("-----Gym Meal Machine-----\n");
-        int count = 0;
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLUMNS; j++) {
-                if (slots[i][j] != null) {
-                    sb.append(slots[i][j].getName()).append("(").append((int) Math.round(slots[i][j].getCalories())).append(", ").append(slots[i][j].getQuantity()).append(")");
-                    sb.append("___");
-                } else {
-                    sb.append("___(0, 0)___");
+        rendering.setLength(0);
+        appendTo(rendering);
+        return rendering.toString();
+    }
+    /**
+     * Appends the same text as {@link #toString()} to a builder.
+     * The text of every occupied slot is kept from one call to the next, and only the slots changed by a fill, a sale
+     * or a clear since the last call are rendered again; the rest is copied.
+     *
+     * @param sb The builder to append to.
+     */
+    void appendTo(StringBuilder sb) {
+        int capacity = rows * columns;
+        if (fragments == null) {
+            fragments = new String[capacity];
+            for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1)) {
+                dirty.set(slot);
+            }
+        }
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            Product product = slots.get(slot);
+            // Appended one by one: the first string concatenation of a run costs more than rendering a whole machine
+            fragments[slot] = product == null ? null
+                    : appendSlot(new StringBuilder(), product, product.getQuantity()).toString();
+            dirty.clear(slot);
+        }
+        sb.append(HEADER);
+        for (int slot = 0; slot < capacity; ) {
+            int next = occupied.nextSetBit(slot);
+            if (next < 0) {
+                next = capacity;
+            }
+            // Empty slots up to the next product are written without looking them up
+            for (; slot < next; slot++) {
+                sb.append(EMPTY_SLOT);
+                if ((slot + 1) % columns == 0) {
+                    sb.append("\n"); // Add newline after every row
                 }
-                count++;
-                // Check if 4 products are processed
-                if (count % 4 == 0) {
-                    sb.append("\n"); // Add newline after every 4 products
+            }
+            if (slot < capacity) {
+                sb.append(fragments[slot]);
+                slot++;
+                // Check if a whole row is processed
+                if (slot % columns == 0) {
+                    sb.append("\n"); // Add newline after every row
                 }
             }
         }
-        sb.append("----------");
-        return sb.toString();
+        sb.append(FOOTER);
+    }
+    /**
+     * Appends the text of a slot holding a product, as {@link #toString()} shows it.
+     *
+     * @param sb       The builder to append to.
+     * @param product  The product in the slot.
+     * @param quantity The units left in the slot.
+     * @return The builder.
+     */
+    static StringBuilder appendSlot(StringBuilder sb, Product product, int quantity) {
+        return sb.append(product.getName()).append('(').append((int) Math.round(product.getCalories())).append(", ")
+                .append(quantity).append(")___");
     }
 }
@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values with log-linear buckets, in the style of HdrHistogram.
+ * Values below 32 have a bucket each; above that every power of two is split into 16 buckets, so a value is known to
+ * within 1/16 of itself. Recording is a single atomic increment plus two adders, so many threads can record at once.
+ */
+class Histogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS; // Values below this have a bucket each
+    private static final int BUCKETS = (Long.SIZE - 5) * SUB_BUCKETS + LINEAR_LIMIT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value.
+     *
+     * @param value The value; negative values are recorded as 0.
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return The number of values.
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return The mean, or 0 if nothing was recorded.
+     */
+    double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return The largest value, or 0 if nothing was recorded.
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Gets the value below which the given share of the recorded values lie, rounded up to the end of its bucket.
+     *
+     * @param percentile The share in percent, from 0 to 100.
+     * @return The value at the percentile, or 0 if nothing was recorded.
+     */
+    long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Forgets every recorded value. Values recorded during the reset may be partly kept.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 4; // Keeps the 5 highest bits: 16 to 31
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * The LineParser class parses product and purchase lines in place, without splitting them into arrays of strings.
+ * It follows the rules of the split based parsing in {@link Main} exactly: fields are separated by tabs, money values
+ * and nutrients by single spaces, money values are read like {@link Integer#parseInt(String)} and other numbers like
+ * {@link Double#parseDouble(String)}. Purchases are written into a reusable {@link Purchase}, so parsing a purchase
+ * line allocates nothing in the common case.
+ */
+class LineParser {
+    /**
+     * Receives the problems found while parsing that do not stop the line from being used.
+     */
+    interface ErrorHandler {
+        /**
+         * Called for a money value that is not an integer. The value is skipped.
+         *
+         * @param token The money value as it appears in the line.
+         */
+        void invalidMoney(CharSequence token);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ErrorHandler errors;
+    private String lastType = ""; // Purchase types repeat, so the last one is reused instead of copied again
+    private int fieldStart;
+    private int fieldEnd;
+
+    /**
+     * Constructs a new parser.
+     *
+     * @param errors The handler for invalid money values.
+     */
+    LineParser(ErrorHandler errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * Parses a purchase line of the form "type TAB money list TAB choice TAB value" into the given purchase.
+     *
+     * @param line     The purchase line.
+     * @param purchase The purchase to overwrite with the parsed values.
+     * @throws IllegalArgumentException If a field is missing or the value is not a number.
+     */
+    void parsePurchase(CharSequence line, Purchase purchase) {
+        field(line, 0);
+        String type = lastType;
+        if (!matches(line, fieldStart, fieldEnd, type)) {
+            type = line.subSequence(fieldStart, fieldEnd).toString();
+            lastType = type;
+        }
+        field(line, 1);
+        int moneyLoaded = parseMoneyList(line, fieldStart, fieldEnd);
+        field(line, 2);
+        Choice choiceCode = Choice.of(line, fieldStart, fieldEnd);
+        // A known choice reuses the constant name, only an unknown one is copied out of the line
+        String choice = choiceCode != Choice.OTHER ? choiceCode.name()
+                : line.subSequence(fieldStart, fieldEnd).toString();
+        field(line, 3);
+        double value = parseDouble(line, fieldStart, fieldEnd);
+        purchase.set(type, moneyLoaded, choice, choiceCode, value);
+    }
+
+    /**
+     * Parses a product line of the form "name TAB price TAB protein carbohydrate fat".
+     *
+     * @param line The product line.
+     * @return The parsed product.
+     * @throws IllegalArgumentException If a field is missing or a number cannot be parsed.
+     */
+    Product parseProduct(CharSequence line) {
+        field(line, 0);
+        String name = line.subSequence(fieldStart, fieldEnd).toString();
+        field(line, 1);
+        long price = Money.parse(line, fieldStart, fieldEnd);
+        field(line, 2);
+        int start = fieldStart;
+        int end = fieldEnd;
+        int tokenEnd = tokensEnd(line, start, end);
+        double[] nutrients = new double[3];
+        for (int i = 0; i < nutrients.length; i++) {
+            if (start > tokenEnd) {
+                throw new IllegalArgumentException("Missing nutrient in line: " + line);
+            }
+            int next = indexOf(line, ' ', start, tokenEnd);
+            nutrients[i] = parseDouble(line, start, next);
+            start = next + 1;
+        }
+        return Product.ofMinorUnits(name, price, nutrients[0], nutrients[1], nutrients[2]);
+    }
+
+    /**
+     * Sums the money values of a field, reporting the invalid ones to the error handler.
+     */
+    private int parseMoneyList(CharSequence line, int start, int end) {
+        int tokenEnd = tokensEnd(line, start, end);
+        int total = 0;
+        while (start <= tokenEnd) {
+            int next = indexOf(line, ' ', start, tokenEnd);
+            if (isInt(line, start, next)) {
+                total += parseInt(line, start, next);
+            } else {
+                errors.invalidMoney(line.subSequence(start, next));
+            }
+            start = next + 1;
+        }
+        return total;
+    }
+
+    /**
+     * Finds where the space separated tokens of a field end, dropping the trailing empty tokens as
+     * {@link String#split(String)} does. A field without spaces is a single token, even when it is empty.
+     *
+     * @return The end of the last token, or {@code start - 1} if the field has no tokens at all.
+     */
+    private static int tokensEnd(CharSequence line, int start, int end) {
+        if (indexOf(line, ' ', start, end) == end) {
+            return end;
+        }
+        int tokenEnd = end;
+        while (tokenEnd > start && line.charAt(tokenEnd - 1) == ' ') {
+            tokenEnd--;
+        }
+        return tokenEnd == start ? start - 1 : tokenEnd;
+    }
+
+    /**
+     * Finds the bounds of a tab separated field and leaves them in {@code fieldStart} and {@code fieldEnd}.
+     * Fields must be read in order, starting from field 0, since each one is found after the previous one.
+     */
+    private void field(CharSequence line, int index) {
+        int start = 0;
+        if (index > 0) {
+            if (fieldEnd == line.length()) {
+                throw new IllegalArgumentException("Missing field " + index + " in line: " + line);
+            }
+            start = fieldEnd + 1;
+        }
+        int end = indexOf(line, '\t', start, line.length());
+        if (index > 0 && start == end && isBlankAfter(line, end)) {
+            // Trailing empty fields are dropped by split, so the split based parsing could not read them either
+            throw new IllegalArgumentException("Missing field " + index + " in line: " + line);
+        }
+        fieldStart = start;
+        fieldEnd = end;
+    }
+
+    /**
+     * Checks whether only tabs follow the given position.
+     */
+    private static boolean isBlankAfter(CharSequence line, int position) {
+        for (int i = position; i < line.length(); i++) {
+            if (line.charAt(i) != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean matches(CharSequence line, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the text would be accepted by {@link Integer#parseInt(String)}.
+     */
+    private static boolean isInt(CharSequence line, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        char first = line.charAt(start);
+        boolean negative = first == '-';
+        int i = start;
+        if (first == '-' || first == '+') {
+            if (end - start == 1) {
+                return false;
+            }
+            i++;
+        }
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(line.charAt(i), 10);
+            if (digit < 0) {
+                return false;
+            }
+            result = result * 10 + digit;
+            if (result > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer already checked by {@link #isInt(CharSequence, int, int)}.
+     */
+    private static int parseInt(CharSequence line, int start, int end) {
+        char first = line.charAt(start);
+        int i = first == '-' || first == '+' ? start + 1 : start;
+        long result = 0;
+        for (; i < end; i++) {
+            result = result * 10 + Character.digit(line.charAt(i), 10);
+        }
+        return (int) (first == '-' ? -result : result);
+    }
+
+    /**
+     * Parses a number like {@link Double#parseDouble(String)}. Plain decimals with up to 15 significant digits are
+     * converted exactly without creating a string; anything else is handed to {@link Double#parseDouble(String)}.
+     */
+    static double parseDouble(CharSequence line, int start, int end) {
+        int from = start;
+        int to = end;
+        while (from < to && line.charAt(from) <= ' ') { // Same whitespace rule as String.trim
+            from++;
+        }
+        while (to > from && line.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        int i = from;
+        boolean negative = false;
+        int signLength = 0;
+        if (i < to && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            signLength = 1;
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1; // Number of digits after the point, -1 while no point is seen
+        for (; i < to; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+                if (digits > 15) {
+                    break;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        boolean noDigits = to - from == signLength + (scale >= 0 ? 1 : 0);
+        if (i < to || noDigits || mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(line.subSequence(start, end).toString());
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only journal of every change made to a machine, with snapshots of its slots, so that the machine can be
+ * rebuilt after a crash by loading the latest snapshot and replaying only the changes made after it.
+ * <p>
+ * The journal file starts with a header (magic number, version, rows, columns) followed by one record per change:
+ * an operation byte and the slot index, and for a placement the product as well (name length, UTF-8 name, price in
+ * minor units, protein, carbohydrate, fat). The snapshot file holds the shape of the machine, the journal position it
+ * was taken at, and every slot holding a product with its quantity. Snapshots are written to a temporary file and
+ * moved into place, so a crash leaves either the old or the new one.
+ * <p>
+ * A crash can also leave a torn record at the end of the journal. Replaying stops before it, and opening the journal
+ * again cuts it off.
+ */
+class MachineJournal implements MachineListener, Closeable {
+    private static final int JOURNAL_MAGIC = 0x474D4D4A; // "GMMJ"
+    private static final int SNAPSHOT_MAGIC = 0x474D4D53; // "GMMS"
+    private static final int VERSION = 2; // Version 1 stored prices as doubles
+    private static final int HEADER_SIZE = 16;
+    private static final byte PLACE = 1;
+    private static final byte RESTOCK = 2;
+    private static final byte SALE = 3;
+    private static final byte CLEAR = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_NAME_LENGTH = BUFFER_SIZE - 64; // So a placement record always fits in the buffer
+    private static final int MAX_RECORD_SIZE = 1 + 4 + 4 + MAX_NAME_LENGTH + 4 * 8;
+
+    private final GMMMachine gmm;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Path snapshotPath;
+    private final long snapshotInterval;
+    private long eventsSinceSnapshot;
+
+    private MachineJournal(GMMMachine gmm, Path journalPath, Path snapshotPath, long snapshotInterval) throws IOException {
+        this.gmm = gmm;
+        this.snapshotPath = snapshotPath;
+        this.snapshotInterval = snapshotInterval;
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                buffer.putInt(JOURNAL_MAGIC).putInt(VERSION).putInt(gmm.getRows()).putInt(gmm.getColumns());
+                flush();
+            } else {
+                checkShape(readHeader(channel), gmm.getRows(), gmm.getColumns());
+                long end = replay(channel, HEADER_SIZE, null); // Finds the end of the last whole record
+                channel.truncate(end);
+                channel.position(end);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts journaling the changes of a machine. The machine must either be empty or have been restored from
+     * the same files with {@link #restore(Path, Path)}; a new journal starts with a snapshot of the machine.
+     *
+     * @param gmm              The machine to journal.
+     * @param journalPath      Path to the journal file, created if it does not exist.
+     * @param snapshotPath     Path to the snapshot file.
+     * @param snapshotInterval Number of changes after which {@link #checkpoint()} takes a new snapshot.
+     * @return The journal, which is now the listener of the machine.
+     * @throws IOException If the journal cannot be opened or does not belong to a machine of this shape.
+     */
+    static MachineJournal open(GMMMachine gmm, Path journalPath, Path snapshotPath, long snapshotInterval)
+            throws IOException {
+        boolean created = Files.notExists(journalPath) || Files.size(journalPath) == 0;
+        MachineJournal journal = new MachineJournal(gmm, journalPath, snapshotPath, snapshotInterval);
+        if (created) {
+            journal.snapshot();
+        }
+        gmm.setListener(journal);
+        return journal;
+    }
+
+    @Override
+    public void onPlace(int slot, Product product) {
+        byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Product name is too long for the journal: " + name.length + " bytes");
+        }
+        reserve(1 + 4 + 4 + name.length + 4 * 8);
+        buffer.put(PLACE).putInt(slot).putInt(name.length).put(name);
+        buffer.putLong(product.getPriceMinor()).putDouble(product.getProtein())
+                .putDouble(product.getCarbohydrate()).putDouble(product.getFat());
+        eventsSinceSnapshot++;
+    }
+
+    @Override
+    public void onRestock(int slot) {
+        record(RESTOCK, slot);
+    }
+
+    @Override
+    public void onSale(int slot) {
+        record(SALE, slot);
+    }
+
+    @Override
+    public void onClear(int slot) {
+        record(CLEAR, slot);
+    }
+
+    private void record(byte operation, int slot) {
+        reserve(1 + 4);
+        buffer.put(operation).putInt(slot);
+        eventsSinceSnapshot++;
+    }
+
+    /**
+     * Makes room in the buffer for a record, writing the buffered records out if needed.
+     */
+    private void reserve(int size) {
+        if (buffer.remaining() < size) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot if enough changes have been journaled since the last one. Called between operations, when the
+     * machine is in a consistent state.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void checkpoint() throws IOException {
+        if (eventsSinceSnapshot >= snapshotInterval) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the journal file.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records and forces them to the disk.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * Writes a snapshot of the machine that points at the current end of the journal.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void snapshot() throws IOException {
+        sync(); // The journal must reach the position the snapshot points at
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(gmm.getRows());
+            out.writeInt(gmm.getColumns());
+            out.writeLong(channel.position());
+            int count = 0;
+            for (int slot = gmm.nextOccupied(0); slot >= 0; slot = gmm.nextOccupied(slot + 1)) {
+                count++;
+            }
+            out.writeInt(count);
+            for (int slot = gmm.nextOccupied(0); slot >= 0; slot = gmm.nextOccupied(slot + 1)) {
+                Product product = gmm.getProduct(slot);
+                out.writeInt(slot);
+                out.writeUTF(product.getName());
+                out.writeLong(product.getPriceMinor());
+                out.writeDouble(product.getProtein());
+                out.writeDouble(product.getCarbohydrate());
+                out.writeDouble(product.getFat());
+                out.writeInt(product.getQuantity());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        eventsSinceSnapshot = 0;
+    }
+
+    /**
+     * Writes the buffered records, closes the journal and stops listening to the machine.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        gmm.setListener(null);
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Rebuilds a machine from the latest snapshot and the changes journaled after it.
+     *
+     * @param journalPath  Path to the journal file.
+     * @param snapshotPath Path to the snapshot file; if it is null or does not exist the whole journal is replayed.
+     * @return The rebuilt machine, without a listener.
+     * @throws IOException If the files cannot be read or are corrupt.
+     */
+    static GMMMachine restore(Path journalPath, Path snapshotPath) throws IOException {
+        try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            int[] shape = readHeader(journal);
+            GMMMachine gmm;
+            long from;
+            if (snapshotPath != null && Files.exists(snapshotPath)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(snapshotPath), BUFFER_SIZE))) {
+                    if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != VERSION) {
+                        throw new IOException("Not a machine snapshot: " + snapshotPath);
+                    }
+                    int rows = in.readInt();
+                    int columns = in.readInt();
+                    checkShape(shape, rows, columns);
+                    from = in.readLong();
+                    gmm = new GMMMachine(rows, columns);
+                    gmm.suspendIndexes(); // Built once at the end instead of after every change
+                    for (int count = in.readInt(); count > 0; count--) {
+                        int slot = in.readInt();
+                        Product product = Product.ofMinorUnits(in.readUTF(), in.readLong(), in.readDouble(),
+                                in.readDouble(), in.readDouble());
+                        int quantity = in.readInt();
+                        gmm.loadInto(slot, product);
+                        for (int i = 1; i < quantity; i++) {
+                            gmm.loadInto(slot, product);
+                        }
+                        if (quantity == 0) {
+                            gmm.takeOne(slot); // Sold out but not cleared yet
+                        }
+                    }
+                    gmm.rebuildFillState(); // The slots were loaded by position, not in fill order
+                }
+            } else {
+                gmm = new GMMMachine(shape[0], shape[1]);
+                gmm.suspendIndexes();
+                from = HEADER_SIZE;
+            }
+            replay(journal, from, gmm);
+            gmm.rebuildIndexes();
+            return gmm;
+        }
+    }
+
+    /**
+     * Applies the journaled changes from a position on, up to the last whole record.
+     *
+     * @param journal The journal file.
+     * @param from    Position of the first record to apply.
+     * @param gmm     The machine to apply the changes to, or null to only check the records.
+     * @return The position right after the last whole record.
+     * @throws IOException If the journal cannot be read or holds an unknown record.
+     */
+    private static long replay(FileChannel journal, long from, GMMMachine gmm) throws IOException {
+        int capacity = gmm == null ? 0 : gmm.getRows() * gmm.getColumns();
+        ByteBuffer in = ByteBuffer.allocate(4 * BUFFER_SIZE); // Refilled once less than a whole record is left
+        in.flip();
+        long readPosition = from;
+        long position = from;
+        boolean end = false;
+        while (true) {
+            if (in.remaining() < MAX_RECORD_SIZE && !end) {
+                in.compact();
+                while (in.hasRemaining()) {
+                    int read = journal.read(in, readPosition);
+                    if (read < 0) {
+                        end = true;
+                        break;
+                    }
+                    readPosition += read;
+                }
+                in.flip();
+            }
+            int start = in.position();
+            if (in.remaining() < 1 + 4) {
+                break; // The end of the journal, or a torn record
+            }
+            byte operation = in.get();
+            int slot = in.getInt();
+            if (gmm != null && (slot < 0 || slot >= capacity)) {
+                throw new IOException("Corrupt journal record at position " + position);
+            }
+            if (operation == SALE) {
+                if (gmm != null) {
+                    gmm.takeOne(slot);
+                }
+            } else if (operation == RESTOCK) {
+                if (gmm != null) {
+                    gmm.loadInto(slot, null);
+                }
+            } else if (operation == CLEAR) {
+                if (gmm != null) {
+                    gmm.clearSlot(slot / gmm.getColumns(), slot % gmm.getColumns());
+                }
+            } else if (operation == PLACE) {
+                if (in.remaining() < 4) {
+                    break;
+                }
+                int length = in.getInt();
+                if (length < 0 || length > MAX_NAME_LENGTH) {
+                    throw new IOException("Corrupt journal record at position " + position);
+                }
+                if (in.remaining() < length + 4 * 8) {
+                    break;
+                }
+                String name = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                Product product = Product.ofMinorUnits(name, in.getLong(), in.getDouble(), in.getDouble(),
+                        in.getDouble());
+                if (gmm != null) {
+                    gmm.loadInto(slot, product);
+                }
+            } else {
+                throw new IOException("Corrupt journal record at position " + position);
+            }
+            position += in.position() - start;
+        }
+        return position;
+    }
+
+    private static int[] readHeader(FileChannel journal) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && journal.read(header, header.position()) >= 0) {
+            // Reads until the header is whole or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != JOURNAL_MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a machine journal");
+        }
+        return new int[] {header.getInt(), header.getInt()};
+    }
+
+    private static void checkShape(int[] shape, int rows, int columns) throws IOException {
+        if (shape[0] != rows || shape[1] != columns) {
+            throw new IOException("The journal belongs to a " + shape[0] + "x" + shape[1] + " machine, not "
+                    + rows + "x" + columns);
+        }
+    }
+}
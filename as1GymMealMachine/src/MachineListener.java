@@ -0,0 +1,34 @@
+/**
+ * Receives every change made to the slots of a {@link GMMMachine}, in the order the changes happen.
+ * Applying the same changes in the same order to an empty machine of the same shape rebuilds the machine.
+ */
+interface MachineListener {
+    /**
+     * Called when a product is placed into an empty slot with its first unit.
+     *
+     * @param slot    The slot index in row-major order.
+     * @param product The product that was placed.
+     */
+    void onPlace(int slot, Product product);
+
+    /**
+     * Called when one more unit is loaded into a slot that already holds the product.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    void onRestock(int slot);
+
+    /**
+     * Called when one unit is sold from a slot.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    void onSale(int slot);
+
+    /**
+     * Called when a sold out slot is cleared.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    void onClear(int slot);
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the operations of a machine: sales by outcome, loads accepted and rejected, sale latency
+ * by choice and the number of slots examined by each nutrient lookup. Everything is lock-free, so the metrics can be
+ * shared by machines running on several threads.
+ * <p>
+ * Reading the clock and updating a histogram cost about as much as a small sale, so only one sale in
+ * {@value #SAMPLE_INTERVAL} is timed and has its lookup measured; the counters see every operation.
+ */
+class MachineMetrics implements MachineMetricsMBean {
+    private static final int SAMPLE_INTERVAL = 16;
+
+    private final LongAdder[] sales = new LongAdder[SaleStatus.values().length];
+    private final LongAdder fillsLoaded = new LongAdder();
+    private final LongAdder fillsNoPlace = new LongAdder();
+    private final LongAdder fillsFull = new LongAdder();
+    private final Histogram[] latencies = new Histogram[Choice.values().length]; // Indexed by the ordinal of the choice
+    private final Histogram allLatencies = new Histogram();
+    private final Histogram[] scans = new Histogram[Choice.values().length]; // Only nutrient choices record scans
+    private int sampleCounter; // Only picks the sales to time, so lost updates between threads do not matter
+    private ObjectName objectName; // Name in JMX, null if not registered
+
+    /**
+     * Constructs metrics with every value at zero.
+     */
+    MachineMetrics() {
+        for (int i = 0; i < sales.length; i++) {
+            sales[i] = new LongAdder();
+        }
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+            scans[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Tells whether the next sale should be sampled, that is timed and recorded with {@link #recordSample}.
+     *
+     * @return True for one call in {@value #SAMPLE_INTERVAL}.
+     */
+    boolean sample() {
+        return ++sampleCounter % SAMPLE_INTERVAL == 0;
+    }
+
+    /**
+     * Records the outcome of a sale that is not sampled.
+     *
+     * @param result The outcome of the sale.
+     */
+    void recordSale(SaleResult result) {
+        sales[result.getStatus().ordinal()].increment();
+    }
+
+    /**
+     * Records a sampled sale: its outcome, how long it took and how many slots its lookup examined.
+     *
+     * @param choice  The choice of the purchase.
+     * @param result  The outcome of the sale.
+     * @param nanos   How long the sale took.
+     * @param scanned Number of slots the nutrient lookup examined; ignored for other choices.
+     */
+    void recordSample(Choice choice, SaleResult result, long nanos, int scanned) {
+        recordSale(result);
+        latencies[choice.ordinal()].record(nanos);
+        allLatencies.record(nanos);
+        if (choice.nutrient() != null) {
+            scans[choice.ordinal()].record(scanned);
+        }
+    }
+
+    /**
+     * Records a load.
+     *
+     * @param status The status returned by {@link GMMMachine#fill(Product)}.
+     */
+    void recordFill(int status) {
+        if (status == 0) {
+            fillsLoaded.increment();
+        } else if (status == 1) {
+            fillsNoPlace.increment();
+        } else {
+            fillsFull.increment();
+        }
+    }
+
+    /**
+     * Makes the metrics visible through JMX, under {@code GymMealMachine:type=MachineMetrics,name=<name>}.
+     *
+     * @param name The name telling these metrics apart from those of other machines.
+     * @throws JMException If the metrics cannot be registered, for example because the name is taken.
+     */
+    void register(String name) throws JMException {
+        objectName = new ObjectName("GymMealMachine:type=MachineMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    /**
+     * Removes the metrics from JMX, if {@link #register(String)} made them visible there.
+     *
+     * @throws JMException If the metrics cannot be unregistered.
+     */
+    void unregister() throws JMException {
+        if (objectName != null && ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Creates the metrics of a run and makes them visible through JMX. A run that does not ask for metrics never
+     * calls this, so it does not load the management classes.
+     *
+     * @param name The name of the metrics in JMX, such as the path of the output file.
+     * @return The metrics, measuring even if they could not be registered.
+     */
+    static MachineMetrics start(String name) {
+        MachineMetrics metrics = new MachineMetrics();
+        try {
+            metrics.register(name);
+        } catch (JMException e) {
+            e.printStackTrace(); // The run goes on, the metrics are still written at the end
+        }
+        return metrics;
+    }
+
+    /**
+     * Ends a run started by {@link #start(String)}: writes the metrics as JSON and removes them from JMX.
+     *
+     * @param path Path to the file to write.
+     */
+    void finish(Path path) {
+        try {
+            writeJson(path);
+            unregister();
+        } catch (IOException | JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes every metric as a JSON document.
+     *
+     * @param path Path to the file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeJson(Path path) throws IOException {
+        Files.write(path, getJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public long getPurchases() {
+        return sales[SaleStatus.PURCHASED.ordinal()].sum();
+    }
+
+    @Override
+    public long getInsufficientMoney() {
+        return sales[SaleStatus.INSUFFICIENT_MONEY.ordinal()].sum();
+    }
+
+    @Override
+    public long getEmptySlot() {
+        return sales[SaleStatus.EMPTY_SLOT.ordinal()].sum();
+    }
+
+    @Override
+    public long getNotFound() {
+        return sales[SaleStatus.NOT_FOUND.ordinal()].sum();
+    }
+
+    @Override
+    public long getInvalidNumber() {
+        return sales[SaleStatus.INVALID_NUMBER.ordinal()].sum();
+    }
+
+    @Override
+    public long getFillsLoaded() {
+        return fillsLoaded.sum();
+    }
+
+    @Override
+    public long getFillsRejected() {
+        return fillsNoPlace.sum() + fillsFull.sum();
+    }
+
+    @Override
+    public long getSaleLatencyP99Nanos() {
+        return allLatencies.percentile(99);
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder("{\n  \"sales\": {");
+        for (SaleStatus status : SaleStatus.values()) {
+            json.append(status.ordinal() == 0 ? "" : ",").append("\n    \"").append(status).append("\": ")
+                    .append(sales[status.ordinal()].sum());
+        }
+        json.append("\n  },\n  \"fills\": {\n    \"loaded\": ").append(fillsLoaded.sum())
+                .append(",\n    \"noPlace\": ").append(fillsNoPlace.sum())
+                .append(",\n    \"full\": ").append(fillsFull.sum())
+                .append("\n  },\n  \"saleLatencyNanos\": {");
+        appendHistograms(json, latencies, false);
+        json.append("\n  },\n  \"slotsScanned\": {");
+        appendHistograms(json, scans, true);
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private static void appendHistograms(StringBuilder json, Histogram[] histograms, boolean nutrientsOnly) {
+        boolean first = true;
+        for (Choice choice : Choice.values()) {
+            if (nutrientsOnly && choice.nutrient() == null) {
+                continue;
+            }
+            Histogram histogram = histograms[choice.ordinal()];
+            json.append(first ? "" : ",").append("\n    \"").append(choice.name()).append("\": {")
+                    .append("\"count\": ").append(histogram.count())
+                    .append(", \"mean\": ").append(String.format(Locale.ROOT, "%.1f", histogram.mean()))
+                    .append(", \"p50\": ").append(histogram.percentile(50))
+                    .append(", \"p90\": ").append(histogram.percentile(90))
+                    .append(", \"p99\": ").append(histogram.percentile(99))
+                    .append(", \"max\": ").append(histogram.max()).append("}");
+            first = false;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : sales) {
+            adder.reset();
+        }
+        fillsLoaded.reset();
+        fillsNoPlace.reset();
+        fillsFull.reset();
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            scans[i].reset();
+        }
+        allLatencies.reset();
+    }
+}
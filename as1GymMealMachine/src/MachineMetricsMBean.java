@@ -0,0 +1,72 @@
+/**
+ * The management interface of {@link MachineMetrics}, as seen through JMX.
+ */
+public interface MachineMetricsMBean {
+    /**
+     * Gets the number of successful sales.
+     *
+     * @return The number of purchases.
+     */
+    long getPurchases();
+
+    /**
+     * Gets the number of sales refused for insufficient money.
+     *
+     * @return The number of refused sales.
+     */
+    long getInsufficientMoney();
+
+    /**
+     * Gets the number of sales from an empty slot.
+     *
+     * @return The number of refused sales.
+     */
+    long getEmptySlot();
+
+    /**
+     * Gets the number of nutrient purchases no product matched.
+     *
+     * @return The number of refused sales.
+     */
+    long getNotFound();
+
+    /**
+     * Gets the number of purchases of a slot number out of the machine.
+     *
+     * @return The number of refused sales.
+     */
+    long getInvalidNumber();
+
+    /**
+     * Gets the number of units loaded into the machine.
+     *
+     * @return The number of loaded units.
+     */
+    long getFillsLoaded();
+
+    /**
+     * Gets the number of units that could not be loaded.
+     *
+     * @return The number of rejected units, including those refused because the machine was full.
+     */
+    long getFillsRejected();
+
+    /**
+     * Gets the 99th percentile of the measured sale latencies over all choices.
+     *
+     * @return The latency in nanoseconds.
+     */
+    long getSaleLatencyP99Nanos();
+
+    /**
+     * Gets every metric as a JSON document.
+     *
+     * @return The metrics in JSON.
+     */
+    String getJson();
+
+    /**
+     * Sets every metric back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,214 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MachineServer class keeps many machines running behind a small HTTP server on the loopback interface, so a
+ * kiosk backend can sell without starting {@link Main} on files. Machines are named by an id and created by their
+ * first product load. Requests carry the lines of the files {@link Main} reads, and responses carry the messages it
+ * writes:
+ * <ul>
+ *     <li>{@code POST /machines/ID/products} loads product lines and answers with the loading messages.</li>
+ *     <li>{@code POST /machines/ID/purchases} sells purchase lines, in order, and answers with the PURCHASE, RETURN
+ *     and INFO messages of each, as {@link GMMMachine#sellProduct} writes them.</li>
+ *     <li>{@code GET /machines/ID} shows the machine as the end of an output file does.</li>
+ *     <li>{@code GET /stats} gives the number of requests and purchases and the request latency percentiles as
+ *     JSON.</li>
+ * </ul>
+ * Requests are handled by a pool of threads. A machine serves one request at a time, so its messages come out as in
+ * a file run, while different machines sell in parallel.
+ */
+public class MachineServer {
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final Map<String, GMMMachine> machines = new ConcurrentHashMap<>();
+    private final Histogram latencies = new Histogram(); // Request handling times in nanoseconds
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder purchases = new LongAdder();
+
+    /**
+     * Constructs a server bound to the loopback interface. It does not accept requests until {@link #start()}.
+     *
+     * @param port    The port to listen on, or 0 for any free port.
+     * @param threads The number of threads handling requests.
+     * @throws IOException If the port cannot be bound.
+     */
+    MachineServer(int port, int threads) throws IOException {
+        // Without it a response waits for the ACK of the previous packet, adding about 40 ms to every request
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        pool = Executors.newFixedThreadPool(threads);
+        server.setExecutor(pool);
+        server.createContext("/machines/", this::handleMachine);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * The main method of the server.
+     *
+     * @param args Command-line arguments. Optional: the port to listen on (8080 by default, 0 for any free port) and
+     * the number of threads handling requests (twice the number of processors by default).
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2 * Runtime.getRuntime().availableProcessors();
+        try {
+            MachineServer server = new MachineServer(port, threads);
+            server.start();
+            System.out.println("SERVER: Listening on http://127.0.0.1:" + server.getPort() + "/");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits for the running ones to finish and stops the threads.
+     */
+    void stop() {
+        server.stop(0);
+        pool.shutdown();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port.
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the statistics of the server as JSON.
+     *
+     * @return The JSON text.
+     */
+    String getStats() {
+        return String.format(Locale.ROOT, "{\"machines\": %d, \"requests\": %d, \"purchases\": %d, "
+                        + "\"latencyMicros\": {\"mean\": %.1f, \"p50\": %.1f, \"p99\": %.1f, \"max\": %.1f}}%n",
+                machines.size(), requests.sum(), purchases.sum(), latencies.mean() / 1e3,
+                latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3, latencies.max() / 1e3);
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, getStats());
+    }
+
+    private void handleMachine(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String[] path = exchange.getRequestURI().getPath().substring("/machines/".length()).split("/");
+        String id = path[0];
+        String action = path.length > 1 ? path[1] : "";
+        String method = exchange.getRequestMethod();
+        try {
+            if (id.isEmpty() || path.length > 2) {
+                respond(exchange, 404, "INFO: Unknown path: " + exchange.getRequestURI().getPath() + "\n");
+            } else if (method.equals("POST") && action.equals("products")) {
+                GMMMachine gmm = machines.computeIfAbsent(id, key -> new GMMMachine());
+                respond(exchange, 200, loadProducts(gmm, readLines(exchange)));
+            } else if (method.equals("POST") && action.equals("purchases")) {
+                GMMMachine gmm = machines.get(id);
+                if (gmm == null) {
+                    respond(exchange, 404, "INFO: Unknown machine: " + id + "\n");
+                } else {
+                    respond(exchange, 200, sellPurchases(gmm, readLines(exchange)));
+                }
+            } else if (method.equals("GET") && action.isEmpty()) {
+                GMMMachine gmm = machines.get(id);
+                if (gmm == null) {
+                    respond(exchange, 404, "INFO: Unknown machine: " + id + "\n");
+                } else {
+                    String rendering;
+                    synchronized (gmm) {
+                        rendering = gmm + "\n";
+                    }
+                    respond(exchange, 200, rendering);
+                }
+            } else {
+                respond(exchange, 405, "INFO: Unsupported request: " + method + " " + exchange.getRequestURI() + "\n");
+            }
+        } catch (IllegalArgumentException e) {
+            // A line that cannot be parsed; the lines before it have been handled already
+            respond(exchange, 400, "INFO: " + e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            // A bug in the machine; the request fails, but the server goes on with the next ones
+            e.printStackTrace();
+            respond(exchange, 500, "INFO: The machine failed: " + e + "\n");
+        }
+        requests.increment();
+        latencies.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Loads product lines into a machine, stopping when it is full, as {@link Main} does.
+     *
+     * @return The loading messages.
+     */
+    private static String loadProducts(GMMMachine gmm, String[] lines) {
+        StringBuilder messages = new StringBuilder();
+        LineParser parser = new LineParser(token -> { });
+        synchronized (gmm) {
+            for (String line : lines) {
+                if (!Main.loadProduct(parser.parseProduct(line), gmm, messages)) {
+                    break;
+                }
+            }
+        }
+        return messages.toString();
+    }
+
+    /**
+     * Sells purchase lines from a machine, in order.
+     *
+     * @return The messages of every sale, each preceded by the invalid money values of its line.
+     */
+    private String sellPurchases(GMMMachine gmm, String[] lines) {
+        StringBuilder messages = new StringBuilder();
+        LineParser parser = new LineParser(token -> messages.append("INFO: Invalid money value: ").append(token)
+                .append("\n"));
+        Purchase purchase = new Purchase(null, 0, null, 0);
+        synchronized (gmm) {
+            for (String line : lines) {
+                parser.parsePurchase(line, purchase);
+                gmm.sellProduct(purchase, messages);
+                purchases.increment();
+            }
+        }
+        return messages.toString();
+    }
+
+    /**
+     * Reads the body of a request as lines, leaving out empty ones.
+     */
+    private static String[] readLines(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        return body.lines().filter(line -> !line.isEmpty()).toArray(String[]::new);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        // An empty body goes out chunked (length 0); -1 makes the server drop the connection the client reuses
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
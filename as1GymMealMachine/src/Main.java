@@ -1,3 +1,9 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 /**
  * This class represents the main entry point of the Gym Meal Machine application.
  * It reads input files containing product and purchase data, interacts with the GMM (Gym Meal Machine)
@@ -5,70 +11,328 @@
  * transaction details to an output file.
  */
 public class Main {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
 
     /**
      * The main method of the application. It reads input files, interacts with the GMM,
      * and writes transaction details to an output file.
      *
      * @param args Command-line arguments. Expects three arguments: input product file path, input purchase file path,
-     * and output file path.
+     * and output file path. An optional fourth argument "--stream" processes the purchases line by line
+     * with constant memory use instead of loading the whole files, and "--mmap" does the same reading the files
+     * through memory mapping. "--pipeline" streams as well, parsing, selling and writing on separate threads.
+     * "--binary" reads both files in the binary format written by {@link BinaryConverter}, without parsing text.
+     * An optional "--metrics=FILE" argument measures the machine, shows the metrics through JMX while it runs and
+     * writes them to FILE as JSON at the end. An optional "--closest" argument makes nutrient purchases sell the
+     * product with the closest value within the tolerance instead of the first one. An optional "--reconcile=FILE"
+     * argument writes to FILE the money inserted, collected and returned during the run.
      */
     public static void main(String[] args) {
+        String mode = "";
+        String metricsPath = null;
+        String reconcilePath = null;
+        boolean closest = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("--metrics=")) {
+                metricsPath = args[i].substring("--metrics=".length());
+            } else if (args[i].startsWith("--reconcile=")) {
+                reconcilePath = args[i].substring("--reconcile=".length());
+            } else if (args[i].equals("--closest")) {
+                closest = true;
+            } else if (mode.isEmpty()) {
+                mode = args[i];
+            }
+        }
+        MachineMetrics metrics = metricsPath == null ? null : MachineMetrics.start(args[2]);
+        GMMMachine gmm = new GMMMachine();
+        gmm.setMetrics(metrics);
+        gmm.setClosestMatch(closest);
+        MoneyLedger ledger = reconcilePath == null ? null : new MoneyLedger();
+        gmm.setLedger(ledger);
+        if (mode.equals("--stream") || mode.equals("--mmap") || mode.equals("--pipeline")) {
+            runStreaming(args[0], args[1], args[2], mode.equals("--mmap"), mode.equals("--pipeline"), gmm);
+        } else if (mode.equals("--binary")) {
+            runBinary(args[0], args[1], args[2], gmm);
+        } else {
+            runDefault(args, gmm);
+        }
+        if (metrics != null) {
+            metrics.finish(Paths.get(metricsPath));
+        }
+        if (ledger != null) {
+            try {
+                ledger.writeReport(Paths.get(reconcilePath));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs the machine loading both files as a whole, the original way.
+     *
+     * @param args Command-line arguments: input product file path, input purchase file path and output file path.
+     * @param gmm  The empty machine to run.
+     */
+    private static void runDefault(String[] args, GMMMachine gmm) {
         // Read input file and parse player data
         String[] productLines = FileInput.readFile(args[0], false, false);
-        GMMMachine gmm = new GMMMachine();
 
         StringBuilder loadingMessages = new StringBuilder();
         StringBuilder messages = new StringBuilder();
         for (String productLine : productLines) {
-            // Split each line into product attributes
-            String[] partsOfProduct = productLine.split("\t");
-            String productName = partsOfProduct[0];
-            double price = Double.parseDouble(partsOfProduct[1]); // Parse price
-            String[] nutrients = partsOfProduct[2].split(" ");
-            double protein = Double.parseDouble(nutrients[0]);
-            double carbohydrate = Double.parseDouble(nutrients[1]);
-            double fat = Double.parseDouble(nutrients[2]);
-
-            Product product = new Product(productName, price, protein, carbohydrate, fat);
-
-            int resultFill = gmm.fill(product);
-            if (resultFill == 1)
-                loadingMessages.append("INFO: There is no available place to put ").append(productName).append("\n");
-            if (resultFill == -1) {
-                loadingMessages.append("INFO: There is no available place to put ").append(productName).append("\n");
-                loadingMessages.append("INFO: The machine is full!\n");
+            if (!loadProduct(productLine, gmm, loadingMessages)) {
                 break;
             }
         }
-        FileOutput.writeToFile(args[2], loadingMessages.toString() + gmm.toString(), false,true);
-
-        String[] purchaseLines = FileInput.readFile(args[1], false, false);
-        for (String purchaseline : purchaseLines){
-            messages.append( "INPUT: "+ purchaseline +"\n");
-            String[] partsOfPurchase  = purchaseline.split("\t");
-
-            String type = partsOfPurchase[0];
-            String[] moneyList = partsOfPurchase[1].split(" ");
-
-            int totalMoney = 0;
-            for (String moneyStr : moneyList) {
-                try {
-                    int money = Integer.parseInt(moneyStr);
-                    totalMoney += money;
-                } catch (NumberFormatException e) {
-                    System.out.println("INFO: Invalid money value: " + moneyStr);
+        // One channel stays open for both parts of the output
+        try (ChannelFileOutput output = ChannelFileOutput.open(args[2], false)) {
+            gmm.appendTo(loadingMessages);
+            output.append(loadingMessages).write('\n');
+            output.flush(); // The loading part reaches the file even if a purchase fails
+
+            String[] purchaseLines = FileInput.readFile(args[1], false, false);
+            for (String purchaseline : purchaseLines){
+                processPurchase(purchaseline, gmm, messages);
+            }
+            // Write loadingMessages and machine content to output file
+            gmm.appendTo(messages);
+            output.append(messages).write('\n');
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the machine reading both files line by line and writing the messages through a fixed size buffer,
+     * so memory use does not depend on the size of the files. Lines are parsed in place by a {@link LineParser}
+     * into a single reused purchase. The output is the same as the one of the default mode.
+     *
+     * @param productPath  Path to the product file.
+     * @param purchasePath Path to the purchase file.
+     * @param outputPath   Path to the output file.
+     * @param mapped       True to read the files through memory mapping, false to read them with a buffered reader.
+     * @return The number of purchases processed, or -1 if a file could not be read or written.
+     */
+    static long runStreaming(String productPath, String purchasePath, String outputPath, boolean mapped) {
+        return runStreaming(productPath, purchasePath, outputPath, mapped, false, new GMMMachine());
+    }
+
+    /**
+     * Runs the machine like {@link #runStreaming(String, String, String, boolean)}, optionally handing the purchases
+     * to a {@link PurchasePipeline} that parses, sells and writes them on separate threads. The output is the same.
+     *
+     * @param productPath  Path to the product file.
+     * @param purchasePath Path to the purchase file.
+     * @param outputPath   Path to the output file.
+     * @param mapped       True to read the files through memory mapping, false to read them with a buffered reader.
+     * @param pipelined    True to process the purchases in a pipeline, false to process them one after the other.
+     * @param gmm          The empty machine to run.
+     * @return The number of purchases processed, or -1 if a file could not be read or written.
+     */
+    static long runStreaming(String productPath, String purchasePath, String outputPath, boolean mapped,
+                             boolean pipelined, GMMMachine gmm) {
+        StringBuilder messages = new StringBuilder();
+        char[] chunk = new char[OUTPUT_BUFFER_SIZE];
+        LineParser parser = new LineParser(Main::reportInvalidMoney);
+        Purchase purchase = new Purchase(null, 0, null, 0);
+        SaleResult result = new SaleResult();
+        long[] purchaseCount = new long[1];
+        try (Writer output = ChannelFileOutput.open(outputPath, false)) {
+            readLines(productPath, mapped, line -> loadProduct(parser.parseProduct(line), gmm, messages));
+            gmm.appendTo(messages);
+            messages.append("\n");
+            if (pipelined) {
+                write(messages, chunk, output);
+                purchaseCount[0] = PurchasePipeline.run(gmm, purchasePath, mapped, parser, output);
+            } else {
+                readLines(purchasePath, mapped, line -> {
+                    // Hands the messages over to the writer from time to time
+                    if (messages.length() >= OUTPUT_BUFFER_SIZE) {
+                        write(messages, chunk, output);
+                    }
+                    messages.append("INPUT: ").append(line).append("\n");
+                    parser.parsePurchase(line, purchase);
+                    SaleFormatter.format(gmm.sell(purchase, result), messages);
+                    purchaseCount[0]++;
+                    return true;
+                });
+            }
+            gmm.appendTo(messages);
+            messages.append("\n");
+            write(messages, chunk, output);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        return purchaseCount[0];
+    }
+
+    /**
+     * Runs the machine on binary files written by {@link BinaryConverter}, record by record. Nothing is parsed: the
+     * records hold the parsed fields, along with the purchase lines for the output and their invalid money values.
+     * The output is the same as the one of the default mode on the text files.
+     *
+     * @param productPath  Path to the binary product file.
+     * @param purchasePath Path to the binary purchase file.
+     * @param outputPath   Path to the output file.
+     * @param gmm          The empty machine to run.
+     * @return The number of purchases processed, or -1 if a file could not be read or written.
+     */
+    static long runBinary(String productPath, String purchasePath, String outputPath, GMMMachine gmm) {
+        StringBuilder messages = new StringBuilder();
+        char[] chunk = new char[OUTPUT_BUFFER_SIZE];
+        LineParser.ErrorHandler errors = Main::reportInvalidMoney;
+        Purchase purchase = new Purchase(null, 0, null, 0);
+        SaleResult result = new SaleResult();
+        long purchaseCount = 0;
+        try (Writer output = ChannelFileOutput.open(outputPath, false)) {
+            try (BinaryFileInput products = BinaryFileInput.open(productPath, BinaryFileInput.PRODUCTS)) {
+                Product product;
+                while ((product = products.nextProduct()) != null && loadProduct(product, gmm, messages)) {
+                    // loadProduct does the work
+                }
+            }
+            gmm.appendTo(messages);
+            messages.append("\n");
+            write(messages, chunk, output); // The loading part reaches the file even if a purchase fails
+            try (BinaryFileInput purchases = BinaryFileInput.open(purchasePath, BinaryFileInput.PURCHASES)) {
+                while (purchases.nextPurchase(purchase, errors)) {
+                    if (messages.length() >= OUTPUT_BUFFER_SIZE) {
+                        write(messages, chunk, output);
+                    }
+                    messages.append("INPUT: ");
+                    purchases.appendLine(messages);
+                    messages.append("\n");
+                    SaleFormatter.format(gmm.sell(purchase, result), messages);
+                    purchaseCount++;
                 }
             }
-            int moneyLoaded = totalMoney;
+            gmm.appendTo(messages);
+            messages.append("\n");
+            write(messages, chunk, output);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        return purchaseCount;
+    }
+
+    /**
+     * Passes the lines of a file to the consumer, as they are.
+     *
+     * @param path     Path to the file.
+     * @param mapped   True to read the file through memory mapping, false to read it with a buffered reader.
+     * @param consumer The consumer of the lines.
+     * @throws IOException If the file cannot be read.
+     */
+    static void readLines(String path, boolean mapped, MappedFileInput.LineConsumer consumer) throws IOException {
+        if (mapped) {
+            MappedFileInput.forEachLine(path, false, false, consumer);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path))) {
+            String line;
+            while ((line = reader.readLine()) != null && consumer.accept(line)) {
+                // Consumer does the work
+            }
+        }
+    }
+
+    /**
+     * Writes the messages to the output through the char buffer and empties them.
+     */
+    private static void write(StringBuilder messages, char[] chunk, Writer output) throws IOException {
+        for (int start = 0; start < messages.length(); start += chunk.length) {
+            int end = Math.min(messages.length(), start + chunk.length);
+            messages.getChars(start, end, chunk, 0);
+            output.write(chunk, 0, end - start);
+        }
+        messages.setLength(0);
+    }
+
+    /**
+     * Parses a product line and loads the product into the machine.
+     *
+     * @param productLine     Line of the product file: name, price and "protein carbohydrate fat" separated by tabs.
+     * @param gmm             The machine to load the product into.
+     * @param loadingMessages StringBuilder to store messages related to the loading process.
+     * @return True if loading can go on, false if the machine is full.
+     */
+    static boolean loadProduct(String productLine, GMMMachine gmm, StringBuilder loadingMessages) {
+        // Split each line into product attributes
+        String[] partsOfProduct = productLine.split("\t");
+        String productName = partsOfProduct[0];
+        long price = Money.parse(partsOfProduct[1]); // Parse price in minor units
+        String[] nutrients = partsOfProduct[2].split(" ");
+        double protein = Double.parseDouble(nutrients[0]);
+        double carbohydrate = Double.parseDouble(nutrients[1]);
+        double fat = Double.parseDouble(nutrients[2]);
+
+        Product product = Product.ofMinorUnits(productName, price, protein, carbohydrate, fat);
+        return loadProduct(product, gmm, loadingMessages);
+    }
 
-            String choice = partsOfPurchase[2];
+    /**
+     * Loads a parsed product into the machine.
+     *
+     * @param product         The product to load.
+     * @param gmm             The machine to load the product into.
+     * @param loadingMessages StringBuilder to store messages related to the loading process.
+     * @return True if loading can go on, false if the machine is full.
+     */
+    static boolean loadProduct(Product product, GMMMachine gmm, StringBuilder loadingMessages) {
+        String productName = product.getName();
+        int resultFill = gmm.fill(product);
+        if (resultFill == 1)
+            loadingMessages.append("INFO: There is no available place to put ").append(productName).append("\n");
+        if (resultFill == -1) {
+            loadingMessages.append("INFO: There is no available place to put ").append(productName).append("\n");
+            loadingMessages.append("INFO: The machine is full!\n");
+            return false;
+        }
+        return true;
+    }
 
-            double value = Double.parseDouble(partsOfPurchase[3]);
-            Purchase purchase = new Purchase(type, moneyLoaded, choice, value);
-            int resultSell = gmm.sellProduct(purchase, messages);
+    /**
+     * Prints a money value that is not an integer, which the purchase then goes without.
+     *
+     * @param token The money value as it appears in the purchase line.
+     */
+    static void reportInvalidMoney(CharSequence token) {
+        // Not a string concatenation, whose first use costs a small run more than the purchases themselves
+        System.out.println(new StringBuilder("INFO: Invalid money value: ").append(token));
+    }
+
+    /**
+     * Parses a purchase line and sells the product asked for.
+     *
+     * @param purchaseline Line of the purchase file: type, money list, choice and value separated by tabs.
+     * @param gmm          The machine to buy from.
+     * @param messages     StringBuilder to store messages related to the purchase process.
+     */
+    static void processPurchase(String purchaseline, GMMMachine gmm, StringBuilder messages) {
+        messages.append("INPUT: ").append(purchaseline).append("\n");
+        String[] partsOfPurchase  = purchaseline.split("\t");
+
+        String type = partsOfPurchase[0];
+        String[] moneyList = partsOfPurchase[1].split(" ");
+
+        int totalMoney = 0;
+        for (String moneyStr : moneyList) {
+            try {
+                int money = Integer.parseInt(moneyStr);
+                totalMoney += money;
+            } catch (NumberFormatException e) {
+                reportInvalidMoney(moneyStr);
+            }
         }
-        // Write loadingMessages and machine content to output file
-        FileOutput.writeToFile(args[2],  messages.toString() + gmm.toString(), true, true);
+        int moneyLoaded = totalMoney;
+
+        String choice = partsOfPurchase[2];
+
+        double value = Double.parseDouble(partsOfPurchase[3]);
+        Purchase purchase = new Purchase(type, moneyLoaded, choice, value);
+        int resultSell = gmm.sellProduct(purchase, messages);
     }
 }
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MappedFileInput class reads a file through memory mapping and hands its lines over one by one,
+ * without turning each line into a String. Lines split the same way as in {@link FileInput#readFile}:
+ * at "\n", "\r" or "\r\n", with the content read as UTF-8.
+ */
+public class MappedFileInput {
+    /**
+     * Receives the lines of a file.
+     */
+    interface LineConsumer {
+        /**
+         * Called for each line of the file. The line is only valid during the call, since its characters
+         * are read straight from the mapped file and the same object is reused for the next line.
+         *
+         * @param line The line without its line terminator.
+         * @return True to go on with the next line, false to stop reading.
+         * @throws IOException If the consumer fails to process the line.
+         */
+        boolean accept(CharSequence line) throws IOException;
+    }
+
+    private static final int WINDOW_SIZE = 1 << 30; // Files are mapped in windows of at most 1 GiB
+
+    /**
+     * Reads the file at the given path and passes its lines to the consumer.
+     *
+     * @param path              Path to the file that is going to be read.
+     * @param discardEmptyLines If true, skips lines that are empty with respect to trim; else, it passes all the lines.
+     * @param trim              Trim status; if true, trims each line; else, it passes each line as-is.
+     * @param consumer          The consumer of the lines.
+     * @throws IOException If the file cannot be read, is not valid UTF-8 or has a line longer than the mapping window.
+     */
+    public static void forEachLine(String path, boolean discardEmptyLines, boolean trim, LineConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteSlice slice = new ByteSlice();
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            while (position < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int start = 0;
+                while (start < length) {
+                    int end = start;
+                    boolean ascii = true;
+                    byte b = 0;
+                    while (end < length && (b = buffer.get(end)) != '\n' && b != '\r') {
+                        ascii &= b >= 0;
+                        end++;
+                    }
+                    int next;
+                    if (end < length) {
+                        if (b == '\r' && end + 1 == length && !last) {
+                            break; // Cannot tell "\r" from "\r\n" yet, the next window starts at this line
+                        }
+                        next = b == '\r' && end + 1 < length && buffer.get(end + 1) == '\n' ? end + 2 : end + 1;
+                    } else if (last) {
+                        next = end;
+                    } else {
+                        break; // The line goes on in the next window
+                    }
+                    int lineStart = start;
+                    int lineEnd = end;
+                    start = next;
+                    if (discardEmptyLines || trim) {
+                        // Bytes up to ' ' are always single characters in UTF-8, so trimming bytes is the same as String.trim
+                        int trimmedStart = lineStart;
+                        int trimmedEnd = lineEnd;
+                        while (trimmedStart < trimmedEnd && (buffer.get(trimmedStart) & 0xFF) <= ' ') {
+                            trimmedStart++;
+                        }
+                        while (trimmedEnd > trimmedStart && (buffer.get(trimmedEnd - 1) & 0xFF) <= ' ') {
+                            trimmedEnd--;
+                        }
+                        if (discardEmptyLines && trimmedStart == trimmedEnd) {
+                            continue;
+                        }
+                        if (trim) {
+                            lineStart = trimmedStart;
+                            lineEnd = trimmedEnd;
+                        }
+                    }
+                    boolean goOn;
+                    if (ascii) {
+                        goOn = consumer.accept(slice.of(buffer, lineStart, lineEnd));
+                    } else { // Only lines with multi-byte characters are decoded into a String
+                        ByteBuffer bytes = buffer.duplicate();
+                        bytes.position(lineStart).limit(lineEnd);
+                        goOn = consumer.accept(decoder.decode(bytes).toString());
+                    }
+                    if (!goOn) {
+                        return;
+                    }
+                }
+                if (start == 0 && !last) {
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + path);
+                }
+                position += start;
+            }
+        }
+    }
+
+    /**
+     * A line made of ASCII bytes of a mapped buffer, read as characters without copying.
+     */
+    private static final class ByteSlice implements CharSequence {
+        private ByteBuffer buffer;
+        private int start;
+        private int end;
+
+        ByteSlice of(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) buffer.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || from > to || to > end - start) {
+                throw new IndexOutOfBoundsException("from " + from + " to " + to);
+            }
+            return new ByteSlice().of(buffer, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact money arithmetic in minor units: an amount is a long counting kurus, 100 to the TL, so prices and change
+ * add up without the rounding errors of doubles. Amounts stay plain longs rather than objects, which keeps the sale
+ * path free of allocations.
+ * <p>
+ * A price with more than two decimals is rounded up to the next kurus. Since customers only insert whole TL, this
+ * never changes whether a purchase can be paid or how many whole TL of change it gets.
+ * Prices too large for a long, infinite or not a number become {@link Long#MAX_VALUE} (never affordable) or
+ * {@link Long#MIN_VALUE}, which is what the machine did with them before.
+ */
+final class Money {
+    /**
+     * Minor units in one TL.
+     */
+    static final int MINOR_UNITS = 100;
+
+    private static final int MAX_DIGITS = 16; // Whole digits that always fit a long once multiplied by 100
+
+    private Money() {
+    }
+
+    /**
+     * Converts whole TL, such as the money a customer inserts, to minor units.
+     *
+     * @param amount The amount in TL.
+     * @return The amount in minor units.
+     */
+    static long ofMajor(int amount) {
+        return amount * (long) MINOR_UNITS;
+    }
+
+    /**
+     * Converts an amount given as a double to minor units, reading it as the shortest decimal that gives that double.
+     *
+     * @param amount The amount in TL.
+     * @return The amount in minor units, rounded up to the next one.
+     */
+    static long ofDouble(double amount) {
+        if (Double.isNaN(amount) || amount == Double.POSITIVE_INFINITY) {
+            return Long.MAX_VALUE;
+        }
+        if (amount == Double.NEGATIVE_INFINITY) {
+            return Long.MIN_VALUE;
+        }
+        return ofDecimal(BigDecimal.valueOf(amount));
+    }
+
+    /**
+     * Parses an amount written in a text, such as the price of a product line.
+     *
+     * @param text The text holding the amount.
+     * @return The amount in minor units, rounded up to the next one.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses an amount written in part of a text. Plain decimals such as "12.5" or "-3" are read digit by digit into
+     * minor units; anything else that Java reads as a double, such as "1e3" or "NaN", is read the way
+     * {@link Double#parseDouble} reads it.
+     *
+     * @param text  The text holding the amount.
+     * @param start The index of the first character of the amount.
+     * @param end   The index after the last character of the amount.
+     * @return The amount in minor units, rounded up to the next one.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    static long parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long whole = 0;
+        int wholeDigits = 0;
+        for (; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9' && wholeDigits < MAX_DIGITS; i++) {
+            whole = whole * 10 + (text.charAt(i) - '0');
+            wholeDigits++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean remainder = false; // A nonzero digit after the second decimal
+        if (i < end && text.charAt(i) == '.') {
+            for (i++; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++, fractionDigits++) {
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (text.charAt(i) - '0');
+                } else if (text.charAt(i) != '0') {
+                    remainder = true;
+                }
+            }
+        }
+        if (i < end || wholeDigits + fractionDigits == 0) {
+            return ofDouble(Double.parseDouble(text.subSequence(start, end).toString())); // Not a plain decimal
+        }
+        for (int digits = fractionDigits; digits < 2; digits++) {
+            fraction *= 10;
+        }
+        long amount = whole * MINOR_UNITS + fraction;
+        if (negative) {
+            return -amount; // Dropping the rest of a negative amount rounds it up
+        }
+        return remainder ? amount + 1 : amount;
+    }
+
+    /**
+     * Converts minor units back to a double, for code that still works in TL.
+     *
+     * @param amount The amount in minor units.
+     * @return The amount in TL; infinite for the amounts that stand for infinite prices.
+     */
+    static double toDouble(long amount) {
+        if (amount == Long.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (amount == Long.MIN_VALUE) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return BigDecimal.valueOf(amount, 2).doubleValue();
+    }
+
+    /**
+     * Gets the whole TL of an amount, dropping the kurus as the machine does when it returns change.
+     *
+     * @param amount The amount in minor units.
+     * @return The whole TL, rounded toward zero and kept within the range of an int.
+     */
+    static int toMajor(long amount) {
+        long major = amount / MINOR_UNITS;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, major));
+    }
+
+    /**
+     * Subtracts two amounts, stopping at the largest or smallest long instead of overflowing.
+     *
+     * @param amount     The amount to subtract from.
+     * @param subtrahend The amount to subtract.
+     * @return The difference in minor units.
+     */
+    static long subtract(long amount, long subtrahend) {
+        long difference = amount - subtrahend;
+        if (((amount ^ subtrahend) & (amount ^ difference)) < 0) {
+            return amount < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return difference;
+    }
+
+    /**
+     * Appends an amount as TL with two decimals, such as "12.50".
+     *
+     * @param amount The amount in minor units.
+     * @param out    Where the amount is written.
+     */
+    static void append(long amount, StringBuilder out) {
+        out.append(BigDecimal.valueOf(amount, 2).toPlainString());
+    }
+
+    private static long ofDecimal(BigDecimal amount) {
+        BigDecimal minor = amount.movePointRight(2).setScale(0, RoundingMode.CEILING);
+        if (minor.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (minor.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) <= 0) {
+            return Long.MIN_VALUE;
+        }
+        return minor.longValueExact();
+    }
+}
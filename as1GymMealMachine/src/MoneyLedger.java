@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The MoneyLedger class adds up the money of every sale of a run in minor units, so the end of the run can show
+ * that the money inserted equals the money collected for the products plus the change due, to the kurus. The money
+ * inserted is taken from the parsed purchases and the money collected from the prices of the products sold, so the
+ * check does not only repeat the arithmetic of the sales.
+ * The machine only returns whole TL, so the ledger also shows how much of the change due stayed in the machine.
+ * A ledger is not thread-safe; it is fed by the one thread that sells.
+ */
+class MoneyLedger {
+    private long sales;
+    private long purchases;
+    private long inserted; // As loaded in the purchases
+    private long paid; // As taken by the sales
+    private long collected;
+    private long prices; // Prices of the products sold
+    private long changeDue;
+    private long changeReturned;
+
+    /**
+     * Records the money of one sale.
+     *
+     * @param purchase The purchase that was sold.
+     * @param result   The outcome of the sale.
+     */
+    void record(Purchase purchase, SaleResult result) {
+        sales++;
+        inserted += Money.ofMajor(purchase.getMoneyLoaded());
+        paid += result.getPaidMinor();
+        changeDue += result.getChangeMinor();
+        changeReturned += Money.ofMajor(result.getChange());
+        if (result.isPurchased()) {
+            purchases++;
+            collected += result.getPaidMinor() - result.getChangeMinor();
+            prices += result.getProduct().getPriceMinor();
+        }
+    }
+
+    /**
+     * Checks that no money went missing: the sales took the money the purchases loaded, collected the prices of the
+     * products sold, and owe the rest as change.
+     *
+     * @return True if the books balance.
+     */
+    boolean isBalanced() {
+        return paid == inserted && collected == prices && inserted == prices + changeDue;
+    }
+
+    /**
+     * Gets the money inserted by all customers.
+     *
+     * @return The money inserted in minor units.
+     */
+    long getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Gets the money collected for the products sold.
+     *
+     * @return The money collected in minor units.
+     */
+    long getCollected() {
+        return collected;
+    }
+
+    /**
+     * Gets the prices of the products sold, added up.
+     *
+     * @return The prices in minor units.
+     */
+    long getPrices() {
+        return prices;
+    }
+
+    /**
+     * Gets the change due to all customers, including the money of the refused sales.
+     *
+     * @return The change due in minor units.
+     */
+    long getChangeDue() {
+        return changeDue;
+    }
+
+    /**
+     * Gets the change actually handed back, in whole TL per sale.
+     *
+     * @return The change returned in minor units.
+     */
+    long getChangeReturned() {
+        return changeReturned;
+    }
+
+    /**
+     * Builds the reconciliation report of the run, one figure per line.
+     *
+     * @return The report.
+     */
+    String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("Sales: ").append(sales).append('\n');
+        report.append("Products sold: ").append(purchases).append('\n');
+        appendAmount(report, "Money inserted: ", inserted);
+        appendAmount(report, "Collected for products: ", collected);
+        appendAmount(report, "Prices of products sold: ", prices);
+        appendAmount(report, "Change due: ", changeDue);
+        appendAmount(report, "Change returned: ", changeReturned);
+        appendAmount(report, "Kept from change: ", changeDue - changeReturned);
+        report.append("Balanced: ").append(isBalanced() ? "yes" : "NO").append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Writes the reconciliation report to a file.
+     *
+     * @param path Path to the file.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeReport(Path path) throws IOException {
+        Files.write(path, getReport().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendAmount(StringBuilder report, String label, long amount) {
+        report.append(label);
+        Money.append(amount, report);
+        report.append(" TL\n");
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * The Nutrient enum lists the nutritional values that a purchase can be matched against.
+ * Each constant knows how to read its own value from a product.
+ */
+enum Nutrient {
+    PROTEIN {
+        @Override
+        double valueOf(Product product) {
+            return product.getProtein();
+        }
+    },
+    CARB {
+        @Override
+        double valueOf(Product product) {
+            return product.getCarbohydrate();
+        }
+    },
+    FAT {
+        @Override
+        double valueOf(Product product) {
+            return product.getFat();
+        }
+    },
+    CALORIE {
+        @Override
+        double valueOf(Product product) {
+            return product.getCalories();
+        }
+    };
+
+    /**
+     * Reads the value of this nutrient from the given product.
+     *
+     * @param product The product whose nutritional value is wanted.
+     * @return The value of this nutrient in the product.
+     */
+    abstract double valueOf(Product product);
+}
@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+/**
+ * The NutrientIndex class keeps the stocked slots of a machine sorted by one nutritional value.
+ * It is a treap ordered by (value, slot index) where every node also remembers the smallest slot index
+ * in its subtree. This makes "first slot in row-major order whose value is within a range" an O(log n)
+ * query instead of a scan over the whole grid. Nodes live in primitive arrays that grow with the number
+ * of indexed slots, not with the size of the machine.
+ */
+class NutrientIndex {
+    private static final int NIL = -1;
+
+    private double[] keys = new double[16];
+    private int[] slots = new int[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] priority = new int[16];
+    private int[] minSlot = new int[16];
+    private int root = NIL;
+    private int nodeCount; // Number of nodes ever allocated
+    private int freeNode = NIL; // Head of the list of released nodes, linked through left
+    private int lastCandidates; // Slots checked by the last lookup
+    // Results of the last split, kept in fields because Java cannot return two values.
+    private int splitLeft;
+    private int splitRight;
+
+    /**
+     * Creates an index holding the same slots as this one.
+     *
+     * @return The copy.
+     */
+    NutrientIndex copy() {
+        NutrientIndex copy = new NutrientIndex();
+        copy.keys = keys.clone();
+        copy.slots = slots.clone();
+        copy.left = left.clone();
+        copy.right = right.clone();
+        copy.priority = priority.clone();
+        copy.minSlot = minSlot.clone();
+        copy.root = root;
+        copy.nodeCount = nodeCount;
+        copy.freeNode = freeNode;
+        return copy;
+    }
+
+    /**
+     * Adds a slot to the index. The slot must not be in the index already.
+     *
+     * @param slot  The slot index in row-major order.
+     * @param value The nutritional value of the product in that slot.
+     */
+    void insert(int slot, double value) {
+        int node = allocate();
+        keys[node] = value;
+        slots[node] = slot;
+        left[node] = NIL;
+        right[node] = NIL;
+        priority[node] = mix(slot);
+        minSlot[node] = slot;
+        split(root, value, slot);
+        int lower = splitLeft;
+        int upper = splitRight;
+        root = merge(merge(lower, node), upper);
+    }
+
+    /**
+     * Removes a slot from the index. Does nothing if the slot is not indexed.
+     *
+     * @param slot  The slot index in row-major order.
+     * @param value The nutritional value the slot was inserted with.
+     */
+    void remove(int slot, double value) {
+        split(root, value, slot);
+        int lower = splitLeft;
+        split(splitRight, value, slot + 1); // Separates the node itself from the greater ones
+        int node = splitLeft;
+        root = merge(lower, splitRight);
+        if (node != NIL) {
+            left[node] = freeNode;
+            freeNode = node;
+        }
+    }
+
+    /**
+     * Finds the first slot in row-major order whose value differs from the given value by at most the tolerance.
+     * The comparison is done exactly as {@code Math.abs(slotValue - value) <= tolerance}, so the result is the
+     * same as the one a scan over all stocked slots would find.
+     *
+     * @param value     The value asked by the customer.
+     * @param tolerance The accepted difference.
+     * @return The slot index of the first match, or -1 if no stocked slot matches.
+     */
+    int firstWithin(double value, double tolerance) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            lastCandidates = 0;
+            return NIL; // Difference is never finite, so nothing can match
+        }
+        // The range is widened by a few ulps so that rounding never hides a match; candidates are checked exactly below.
+        double margin = 4 * Math.ulp(Math.abs(value) + tolerance);
+        double low = value - tolerance - margin;
+        double high = value + tolerance + margin;
+        int[] rejectedSlots = null;
+        double[] rejectedKeys = null;
+        int rejectedCount = 0;
+        int slot;
+        while (true) {
+            int node = firstInRange(low, high);
+            slot = node == NIL ? NIL : slots[node];
+            if (node == NIL || Math.abs(keys[node] - value) <= tolerance) {
+                break;
+            }
+            // Only reachable on the widened edges of the range, so this is rare and short.
+            if (rejectedSlots == null) {
+                rejectedSlots = new int[4];
+                rejectedKeys = new double[4];
+            } else if (rejectedCount == rejectedSlots.length) {
+                rejectedSlots = Arrays.copyOf(rejectedSlots, rejectedCount * 2);
+                rejectedKeys = Arrays.copyOf(rejectedKeys, rejectedCount * 2);
+            }
+            rejectedSlots[rejectedCount] = slot;
+            rejectedKeys[rejectedCount++] = keys[node];
+            remove(slot, keys[node]);
+        }
+        for (int i = 0; i < rejectedCount; i++) {
+            insert(rejectedSlots[i], rejectedKeys[i]);
+        }
+        lastCandidates = rejectedCount + (slot == NIL ? 0 : 1);
+        return slot;
+    }
+
+    /**
+     * Finds the slot whose value is closest to the given value, if it differs by at most the tolerance.
+     * Among equally close slots the first one in row-major order wins.
+     *
+     * @param value     The value asked by the customer.
+     * @param tolerance The accepted difference.
+     * @return The slot index of the closest match, or -1 if no stocked slot matches.
+     */
+    int closestWithin(double value, double tolerance) {
+        lastCandidates = 0;
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return NIL; // Difference is never finite, so nothing can match
+        }
+        int best = NIL;
+        double bestDifference = Double.POSITIVE_INFINITY;
+        // The candidates are the first slot of the greatest value below and of the smallest value from here on.
+        int below = lastBelow(value);
+        int[] candidates = {below == NIL ? NIL : firstFrom(keys[below], Integer.MIN_VALUE),
+                firstFrom(value, Integer.MIN_VALUE), NIL, NIL};
+        if ((candidates[0] != NIL && keys[candidates[0]] == 0) || (candidates[1] != NIL && keys[candidates[1]] == 0)) {
+            // The index orders -0.0 before 0.0 though they are equally close, so both zeros are looked at
+            candidates[2] = firstFrom(-0.0, Integer.MIN_VALUE);
+            candidates[3] = firstFrom(0.0, Integer.MIN_VALUE);
+        }
+        for (int node : candidates) {
+            if (node == NIL) {
+                continue;
+            }
+            lastCandidates++;
+            double difference = Math.abs(keys[node] - value);
+            if (difference <= tolerance && (difference < bestDifference
+                    || (difference == bestDifference && slots[node] < slots[best]))) {
+                best = node;
+                bestDifference = difference;
+            }
+        }
+        return best == NIL ? NIL : slots[best];
+    }
+
+    /**
+     * Finds the node of the greatest value ordered strictly before the given one.
+     */
+    private int lastBelow(double value) {
+        int result = NIL;
+        for (int node = root; node != NIL; ) {
+            if (Double.compare(keys[node], value) < 0) {
+                result = node;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first node ordered at or after (value, slot).
+     */
+    private int firstFrom(double value, int slot) {
+        int result = NIL;
+        for (int node = root; node != NIL; ) {
+            if (compare(node, value, slot) >= 0) {
+                result = node;
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of slots the last call of {@link #firstWithin} or {@link #closestWithin} checked.
+     *
+     * @return The number of candidate slots checked.
+     */
+    int lastCandidates() {
+        return lastCandidates;
+    }
+
+    /**
+     * Finds the node holding the smallest slot index among the indexed slots whose value lies in the closed range.
+     *
+     * @param low  Lower bound of the range.
+     * @param high Upper bound of the range.
+     * @return The node of the smallest slot index in the range, or -1 if there is none.
+     */
+    private int firstInRange(double low, double high) {
+        split(root, low, Integer.MIN_VALUE);
+        int lower = splitLeft;
+        split(splitRight, high, Integer.MAX_VALUE);
+        int middle = splitLeft;
+        int upper = splitRight;
+        int result = middle == NIL ? NIL : find(middle, minSlot[middle]);
+        root = merge(lower, merge(middle, upper));
+        return result;
+    }
+
+    /**
+     * Splits the subtree into the nodes ordered before (value, slot) and the rest.
+     * The two parts are left in {@code splitLeft} and {@code splitRight}.
+     */
+    private void split(int node, double value, int slot) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        if (compare(node, value, slot) < 0) {
+            split(right[node], value, slot);
+            right[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        } else {
+            split(left[node], value, slot);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+        }
+    }
+
+    /**
+     * Merges two subtrees where every node of the first one is ordered before every node of the second one.
+     *
+     * @return The root of the merged subtree.
+     */
+    private int merge(int first, int second) {
+        if (first == NIL) {
+            return second;
+        }
+        if (second == NIL) {
+            return first;
+        }
+        if (priority[first] > priority[second]) {
+            right[first] = merge(right[first], second);
+            update(first);
+            return first;
+        }
+        left[second] = merge(first, left[second]);
+        update(second);
+        return second;
+    }
+
+    /**
+     * Finds the node of a slot in a subtree by following the subtree minimums down.
+     */
+    private int find(int node, int slot) {
+        while (slots[node] != slot) {
+            node = left[node] != NIL && minSlot[left[node]] == slot ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    private int compare(int node, double value, int slot) {
+        int result = Double.compare(keys[node], value);
+        return result != 0 ? result : Integer.compare(slots[node], slot);
+    }
+
+    private int allocate() {
+        if (freeNode != NIL) {
+            int node = freeNode;
+            freeNode = left[node];
+            return node;
+        }
+        if (nodeCount == keys.length) {
+            int length = nodeCount * 2;
+            keys = Arrays.copyOf(keys, length);
+            slots = Arrays.copyOf(slots, length);
+            left = Arrays.copyOf(left, length);
+            right = Arrays.copyOf(right, length);
+            priority = Arrays.copyOf(priority, length);
+            minSlot = Arrays.copyOf(minSlot, length);
+        }
+        return nodeCount++;
+    }
+
+    private void update(int node) {
+        int min = slots[node];
+        if (left[node] != NIL && minSlot[left[node]] < min) {
+            min = minSlot[left[node]];
+        }
+        if (right[node] != NIL && minSlot[right[node]] < min) {
+            min = minSlot[right[node]];
+        }
+        minSlot[node] = min;
+    }
+
+    /**
+     * Derives a fixed pseudo-random priority from a slot index, so the tree shape does not depend on run order.
+     */
+    private static int mix(int slot) {
+        int h = slot * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
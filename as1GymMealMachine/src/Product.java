@@ -4,7 +4,7 @@
  */
 public class Product {
     private String name;
-    private double price;
+    private long price; // In minor units, see Money
     private double protein;
     private double carbohydrate;
     private double fat;
@@ -15,12 +15,25 @@ public class Product {
      * Constructs a new Product object with the specified attributes.
      *
      * @param name         The name of the product.
-     * @param price        The price of the product.
+     * @param price        The price of the product in TL, rounded up to the next kurus.
      * @param protein      The protein content of the product.
      * @param carbohydrate The carbohydrate content of the product.
      * @param fat          The fat content of the product.
      */
     public Product(String name, double price, double protein, double carbohydrate, double fat) {
+        this(name, Money.ofDouble(price), protein, carbohydrate, fat);
+    }
+
+    /**
+     * Constructs a new Product object whose price is already in minor units.
+     *
+     * @param name         The name of the product.
+     * @param price        The price of the product in minor units.
+     * @param protein      The protein content of the product.
+     * @param carbohydrate The carbohydrate content of the product.
+     * @param fat          The fat content of the product.
+     */
+    private Product(String name, long price, double protein, double carbohydrate, double fat) {
         this.name = name;
         this.price = price;
         this.protein = protein;
@@ -30,6 +43,31 @@ public class Product {
         this.quantity = 1;
     }
 
+    /**
+     * Creates a product whose price is already in minor units, such as one parsed by {@link Money#parse}.
+     *
+     * @param name         The name of the product.
+     * @param price        The price of the product in minor units.
+     * @param protein      The protein content of the product.
+     * @param carbohydrate The carbohydrate content of the product.
+     * @param fat          The fat content of the product.
+     * @return The new product.
+     */
+    static Product ofMinorUnits(String name, long price, double protein, double carbohydrate, double fat) {
+        return new Product(name, price, protein, carbohydrate, fat);
+    }
+
+    /**
+     * Creates a product with the same fields and quantity as this one.
+     *
+     * @return The copy.
+     */
+    Product copy() {
+        Product copy = ofMinorUnits(getName(), getPriceMinor(), getProtein(), getCarbohydrate(), getFat());
+        copy.quantity = getQuantity();
+        return copy;
+    }
+
     /**
      * Gets the name of the product.
      *
@@ -60,9 +98,18 @@ public class Product {
     /**
      * Gets the price of the product.
      *
-     * @return The price of the product.
+     * @return The price of the product in TL.
      */
     public double getPrice() {
+        return Money.toDouble(getPriceMinor());
+    }
+
+    /**
+     * Gets the exact price of the product.
+     *
+     * @return The price of the product in minor units.
+     */
+    public long getPriceMinor() {
         return price;
     }
 
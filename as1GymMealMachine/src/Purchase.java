@@ -6,6 +6,7 @@ public class Purchase {
     private String type;
     private int moneyLoaded;
     private String choice;
+    private Choice choiceCode; // The choice resolved once, so selling does not compare strings
     private double value;
 
     /**
@@ -20,6 +21,36 @@ public class Purchase {
         this.type = type;
         this.moneyLoaded = moneyLoaded;
         this.choice = choice;
+        this.choiceCode = Choice.of(choice);
+        this.value = value;
+    }
+
+    /**
+     * Overwrites all values of this purchase, so a single object can be reused for many purchase lines.
+     *
+     * @param type        The type of purchase.
+     * @param moneyLoaded The amount of money loaded by the customer.
+     * @param choice      The choice made by the customer.
+     * @param value       The value associated with the choice made by the customer.
+     */
+    void set(String type, int moneyLoaded, String choice, double value) {
+        set(type, moneyLoaded, choice, Choice.of(choice), value);
+    }
+
+    /**
+     * Overwrites all values of this purchase with a choice that is already resolved, as a parser does.
+     *
+     * @param type        The type of purchase.
+     * @param moneyLoaded The amount of money loaded by the customer.
+     * @param choice      The choice made by the customer.
+     * @param choiceCode  The resolved choice, which must match the text of the choice.
+     * @param value       The value associated with the choice made by the customer.
+     */
+    void set(String type, int moneyLoaded, String choice, Choice choiceCode, double value) {
+        this.type = type;
+        this.moneyLoaded = moneyLoaded;
+        this.choice = choice;
+        this.choiceCode = choiceCode;
         this.value = value;
     }
 
@@ -41,6 +72,15 @@ public class Purchase {
         return moneyLoaded;
     }
 
+    /**
+     * Retrieves the amount of money loaded by the customer, for exact arithmetic with prices.
+     *
+     * @return The amount of money loaded in minor units.
+     */
+    public long getMoneyMinor() {
+        return Money.ofMajor(moneyLoaded);
+    }
+
     /**
      * Retrieves the choice made by the customer.
      *
@@ -50,6 +90,15 @@ public class Purchase {
         return choice;
     }
 
+    /**
+     * Retrieves the choice made by the customer, resolved to the choices the machine knows.
+     *
+     * @return The choice, {@link Choice#OTHER} if the machine does not know it.
+     */
+    Choice getChoiceCode() {
+        return choiceCode;
+    }
+
     /**
      * Retrieves the value associated with the choice made by the customer.
      *
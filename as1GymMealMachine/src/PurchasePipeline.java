@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Processes a purchase file in three stages connected by bounded ring buffers: a parser thread turns the lines into
+ * purchases, the calling thread sells them, and a writer thread renders the messages into the output. Only the
+ * selling stage touches the machine and it sells the purchases in file order, so the output is the same as the one
+ * of a sequential run.
+ * <p>
+ * Purchases travel in batches that go round from the parser to the seller, to the writer and back to the parser, so
+ * the number of batches in flight bounds the memory of the pipeline and no purchase object is allocated once it runs.
+ * If a stage fails, it passes the later batches on without processing them and the parser stops reading, so the
+ * output ends with the messages of the purchases handled before the failure. The failure is thrown by {@link #run}
+ * once every stage has stopped.
+ */
+class PurchasePipeline {
+    private static final int BATCH_SIZE = 1024;
+    private static final int BATCHES = 8;
+
+    /**
+     * A batch of purchases with their lines and the results of their sales.
+     */
+    private static final class Batch {
+        final String[] lines = new String[BATCH_SIZE];
+        final Purchase[] purchases = new Purchase[BATCH_SIZE];
+        final List<SaleResult> results = new ArrayList<>(BATCH_SIZE);
+        int size;
+        boolean last; // True for the final batch, which stops every stage after it is processed
+
+        Batch() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                purchases[i] = new Purchase(null, 0, null, 0);
+            }
+        }
+    }
+
+    private final GMMMachine gmm;
+    private final LineParser parser;
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> sold = new ArrayBlockingQueue<>(BATCHES);
+    private volatile Throwable failure; // The first failure of any stage
+    private Batch current; // The batch the parser is filling
+    private long purchaseCount;
+
+    private PurchasePipeline(GMMMachine gmm, LineParser parser) {
+        this.gmm = gmm;
+        this.parser = parser;
+        for (int i = 0; i < BATCHES; i++) {
+            free.add(new Batch());
+        }
+    }
+
+    /**
+     * Sells the purchases of a file and writes their messages, the same way as the streaming mode of {@link Main}.
+     *
+     * @param gmm          The machine to sell from.
+     * @param purchasePath Path to the purchase file.
+     * @param mapped       True to read the file through memory mapping, false to read it with a buffered reader.
+     * @param parser       The parser of the purchase lines, only used by the parser thread.
+     * @param output       Where the messages are written, only used by the writer thread until this method returns.
+     * @return The number of purchases processed.
+     * @throws IOException If the file cannot be read or the output cannot be written.
+     */
+    static long run(GMMMachine gmm, String purchasePath, boolean mapped, LineParser parser, Writer output)
+            throws IOException {
+        PurchasePipeline pipeline = new PurchasePipeline(gmm, parser);
+        Thread parserThread = new Thread(() -> pipeline.parse(purchasePath, mapped), "pipeline-parser");
+        Thread writerThread = new Thread(() -> pipeline.write(output), "pipeline-writer");
+        parserThread.setDaemon(true);
+        writerThread.setDaemon(true);
+        parserThread.start();
+        writerThread.start();
+        pipeline.sell();
+        try {
+            parserThread.join();
+            writerThread.join();
+        } catch (InterruptedException e) {
+            pipeline.fail(e);
+        }
+        Throwable failure = pipeline.failure;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) failure).getCause();
+        } else if (failure instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The purchase pipeline was interrupted");
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return pipeline.purchaseCount;
+    }
+
+    /**
+     * The first stage: reads and parses the lines into batches.
+     */
+    private void parse(String purchasePath, boolean mapped) {
+        try {
+            current = take(free);
+            Main.readLines(purchasePath, mapped, line -> {
+                if (failure != null) {
+                    return false; // A later stage failed, nothing more needs reading
+                }
+                Batch batch = current;
+                parser.parsePurchase(line, batch.purchases[batch.size]);
+                batch.lines[batch.size++] = line.toString();
+                if (batch.size == BATCH_SIZE) {
+                    try {
+                        parsed.put(batch);
+                        current = null; // Handed off, so it must not be queued again if the next take fails
+                        current = take(free);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("The purchase pipeline was interrupted");
+                    }
+                }
+                return true;
+            });
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            endStream();
+        }
+    }
+
+    /**
+     * Queues the batch being filled as the last one. If there is none, because the parser was interrupted before
+     * getting its next batch, an empty one is waited for: the later stages keep passing the batches before it back.
+     */
+    private void endStream() {
+        boolean interrupted = false;
+        while (current == null) {
+            try {
+                current = take(free);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        current.last = true;
+        parsed.add(current); // Never blocks, the queue can hold every batch
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The second stage: sells the purchases of every batch in order.
+     */
+    private void sell() {
+        boolean failed = false;
+        while (true) {
+            Batch batch;
+            try {
+                batch = parsed.take();
+            } catch (InterruptedException e) {
+                // The parser and the writer only stop after the last batch, so the batches are still passed on empty
+                // until it comes; the parser stops reading once it sees the failure
+                fail(e);
+                failed = true;
+                continue;
+            }
+            if (failed) {
+                batch.size = 0;
+            } else {
+                try {
+                    gmm.sellBatch(Arrays.asList(batch.purchases).subList(0, batch.size), batch.results);
+                    purchaseCount += batch.size;
+                } catch (Throwable e) {
+                    fail(e);
+                    failed = true;
+                    batch.size = 0; // The machine is in an unknown state after the failing sale
+                }
+            }
+            boolean last = batch.last; // Read before the writer gets the batch and resets it
+            sold.add(batch);
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The third stage: renders the messages of every batch and writes them.
+     */
+    private void write(Writer output) {
+        StringBuilder messages = new StringBuilder();
+        char[] chunk = new char[1 << 16];
+        boolean failed = false;
+        while (true) {
+            Batch batch;
+            try {
+                batch = sold.take();
+            } catch (InterruptedException e) {
+                fail(e);
+                return;
+            }
+            if (!failed) {
+                try {
+                    for (int i = 0; i < batch.size; i++) {
+                        messages.append("INPUT: ").append(batch.lines[i]).append("\n");
+                        SaleFormatter.format(batch.results.get(i), messages);
+                    }
+                    for (int start = 0; start < messages.length(); start += chunk.length) {
+                        int end = Math.min(messages.length(), start + chunk.length);
+                        messages.getChars(start, end, chunk, 0);
+                        output.write(chunk, 0, end - start);
+                    }
+                    messages.setLength(0);
+                } catch (Throwable e) {
+                    fail(e);
+                    failed = true;
+                }
+            }
+            boolean last = batch.last;
+            batch.size = 0;
+            batch.last = false;
+            free.add(batch);
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    private static Batch take(BlockingQueue<Batch> queue) throws InterruptedException {
+        Batch batch = queue.take();
+        batch.size = 0;
+        batch.last = false;
+        return batch;
+    }
+
+    private void fail(Throwable e) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+}
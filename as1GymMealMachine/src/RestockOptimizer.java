@@ -0,0 +1,395 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The RestockOptimizer class searches for the slot layout that would have sold the most in a recorded purchase
+ * history. A layout gives every slot of the machine one kind of product, filled up to the capacity of the slot.
+ * Each candidate is loaded into a machine the way {@link Main} loads a product file and the history is replayed
+ * against it, so the counts are exactly the ones a run of the machine would give.
+ * <p>
+ * The search climbs from the layout of the given product file: every round changes or swaps a few slots of the best
+ * layout so far in many ways, replays all of them in parallel and keeps the best one. Empty slots are always moved to
+ * the end of a layout, since a product file cannot leave a gap before a filled slot. Layouts are compared by
+ * products sold, then by the refunds of "Product not found" and empty slots, then by the money collected. With a
+ * restocking period, the machine is filled up to the layout again every that many purchases; every period replays a
+ * cheap copy of the loaded machine, which only copies the products it sells from.
+ * The best layout is written as a product file that {@link Main} can load.
+ */
+public class RestockOptimizer {
+    private static final int BATCH = 64; // Layouts tried per round
+
+    private final String[] kindLines; // The first product line of every kind, written as is to the result
+    private final Product[] kinds;
+    private final Purchase[] history;
+    private final int capacity; // Slots of the machine
+    private int period; // Purchases between two restocks, the whole history if 0
+    private boolean closestMatch;
+
+    /**
+     * The outcome of replaying the history against one layout.
+     */
+    static final class Score implements Comparable<Score> {
+        private final long[] sales = new long[SaleStatus.values().length];
+        private long collected; // In minor units
+
+        private void record(SaleResult result) {
+            sales[result.getStatus().ordinal()]++;
+            if (result.isPurchased()) {
+                collected += result.getPaidMinor() - result.getChangeMinor();
+            }
+        }
+
+        /**
+         * Gets the number of sales that ended with the given status.
+         *
+         * @param status The status.
+         * @return The number of sales.
+         */
+        long count(SaleStatus status) {
+            return sales[status.ordinal()];
+        }
+
+        private long missed() {
+            return count(SaleStatus.NOT_FOUND) + count(SaleStatus.EMPTY_SLOT);
+        }
+
+        @Override
+        public int compareTo(Score other) {
+            if (count(SaleStatus.PURCHASED) != other.count(SaleStatus.PURCHASED)) {
+                return Long.compare(count(SaleStatus.PURCHASED), other.count(SaleStatus.PURCHASED));
+            }
+            if (missed() != other.missed()) {
+                return Long.compare(other.missed(), missed()); // Fewer missed sales is better
+            }
+            return Long.compare(collected, other.collected);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(count(SaleStatus.PURCHASED)).append(" sold, ")
+                    .append(count(SaleStatus.NOT_FOUND)).append(" not found, ")
+                    .append(count(SaleStatus.EMPTY_SLOT)).append(" empty slot, ")
+                    .append(count(SaleStatus.INSUFFICIENT_MONEY)).append(" insufficient money, ")
+                    .append(count(SaleStatus.INVALID_NUMBER)).append(" invalid number, collected ");
+            Money.append(collected, text);
+            return text.append(" TL").toString();
+        }
+    }
+
+    /**
+     * Constructs an optimizer.
+     *
+     * @param productLines The lines of a product file; every product name found in them is a kind to choose from.
+     * @param history      The purchases to replay, in order.
+     */
+    RestockOptimizer(String[] productLines, Purchase[] history) {
+        Map<String, String> lines = new LinkedHashMap<>();
+        Map<String, Product> products = new LinkedHashMap<>();
+        LineParser parser = new LineParser(token -> { });
+        for (String line : productLines) {
+            Product product = parser.parseProduct(line);
+            if (!products.containsKey(product.getName())) {
+                products.put(product.getName(), product); // Later lines of a name only add units, as in the machine
+                lines.put(product.getName(), line);
+            }
+        }
+        this.kindLines = lines.values().toArray(new String[0]);
+        this.kinds = products.values().toArray(new Product[0]);
+        this.history = history;
+        GMMMachine machine = newMachine();
+        this.capacity = machine.getRows() * machine.getColumns();
+    }
+
+    /**
+     * The main method of the optimizer.
+     *
+     * @param args Command-line arguments. Expects the product file path, the purchase history file path and the path
+     * of the product file to write. Optional arguments: "--layouts=N" for the number of layouts to try (4096 by
+     * default), "--threads=N", "--seed=N", "--period=N" to restock the machine every N purchases and "--closest" to
+     * replay nutrient purchases in closest match mode.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int layouts = 4096;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+        int period = 0;
+        boolean closest = false;
+        for (int i = 3; i < args.length; i++) {
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+            if (args[i].startsWith("--layouts=")) {
+                layouts = Integer.parseInt(value);
+            } else if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(value);
+            } else if (args[i].startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (args[i].startsWith("--period=")) {
+                period = Integer.parseInt(value);
+            } else if (args[i].equals("--closest")) {
+                closest = true;
+            } else {
+                System.out.println("INFO: Unknown option: " + args[i]);
+            }
+        }
+        String[] productLines = FileInput.readFile(args[0], true, false);
+        String[] purchaseLines = FileInput.readFile(args[1], true, false);
+        if (productLines == null || purchaseLines == null) {
+            return;
+        }
+        LineParser parser = new LineParser(token -> { }); // Invalid money was reported when the history was recorded
+        Purchase[] history = new Purchase[purchaseLines.length];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new Purchase(null, 0, null, 0);
+            parser.parsePurchase(purchaseLines[i], history[i]);
+        }
+        RestockOptimizer optimizer = new RestockOptimizer(productLines, history);
+        optimizer.setPeriod(period);
+        optimizer.setClosestMatch(closest);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int[] current = optimizer.layoutOf(productLines);
+        Score currentScore = optimizer.evaluate(optimizer.load(productLines));
+        System.out.println("CURRENT: " + currentScore);
+        try {
+            int[] best = optimizer.search(current, layouts, new Random(seed), pool);
+            String bestFile = optimizer.productFile(best);
+            // Scored as the file loads, which is how the search scored it since it leaves no gaps between slots
+            Score bestScore = optimizer.evaluate(optimizer.load(bestFile.isEmpty() ? new String[0]
+                    : bestFile.split("\n")));
+            if (bestScore.compareTo(currentScore) <= 0) {
+                System.out.println("INFO: No layout beats the current one, it is written as is");
+                FileOutput.writeToFile(args[2], String.join("\n", productLines), false, true);
+            } else {
+                System.out.println("BEST: " + bestScore);
+                FileOutput.writeToFile(args[2], bestFile, false, true);
+            }
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(String.format(Locale.ROOT, "OPTIMIZER: %d layouts in %.3f s", layouts,
+                (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Sets how often the machine is filled up to the layout again while the history is replayed.
+     *
+     * @param period The number of purchases between two restocks, or 0 to fill the machine only once.
+     */
+    void setPeriod(int period) {
+        if (period < 0) {
+            throw new IllegalArgumentException("The restocking period cannot be negative: " + period);
+        }
+        this.period = period;
+    }
+
+    /**
+     * Chooses how nutrient purchases pick their slot during the replay, see {@link GMMMachine#setClosestMatch}.
+     *
+     * @param closestMatch True to replay in closest match mode.
+     */
+    void setClosestMatch(boolean closestMatch) {
+        this.closestMatch = closestMatch;
+    }
+
+    /**
+     * Climbs from a layout to a better one.
+     *
+     * @param start   The layout to start from.
+     * @param layouts The number of layouts to try.
+     * @param random  The source of the changes; the same seed gives the same result whatever the number of threads.
+     * @param pool    The threads that replay the layouts.
+     * @return The best layout found.
+     * @throws ExecutionException   If a replay fails.
+     * @throws InterruptedException If the search is interrupted.
+     */
+    int[] search(int[] start, int layouts, Random random, ExecutorService pool)
+            throws ExecutionException, InterruptedException {
+        int[] best = start;
+        Score bestScore = evaluate(load(best));
+        for (int tried = 0; tried < layouts; tried += BATCH) {
+            List<int[]> candidates = new ArrayList<>();
+            List<Future<Score>> scores = new ArrayList<>();
+            for (int i = 0; i < Math.min(BATCH, layouts - tried); i++) {
+                int[] candidate = mutate(best, random);
+                candidates.add(candidate);
+                Callable<Score> replay = () -> evaluate(load(candidate));
+                scores.add(pool.submit(replay));
+            }
+            // Results are taken in submission order, so ties go to the first candidate whatever finished first
+            for (int i = 0; i < candidates.size(); i++) {
+                Score score = scores.get(i).get();
+                if (score.compareTo(bestScore) > 0) {
+                    best = candidates.get(i);
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Changes a layout at random: one to three slots get another kind or are left empty, or two slots swap kinds.
+     * The empty slots are then moved to the end, see {@link #compact(int[])}.
+     */
+    private int[] mutate(int[] layout, Random random) {
+        int[] candidate = layout.clone();
+        int changes = 1 + random.nextInt(3);
+        for (int i = 0; i < changes; i++) {
+            int slot = random.nextInt(candidate.length);
+            if (random.nextInt(4) == 0) {
+                int other = random.nextInt(candidate.length);
+                int kind = candidate[slot];
+                candidate[slot] = candidate[other];
+                candidate[other] = kind;
+            } else {
+                candidate[slot] = random.nextInt(kinds.length + 1) - 1; // -1 leaves the slot empty
+            }
+        }
+        return compact(candidate);
+    }
+
+    /**
+     * Moves the empty slots of a layout to its end, keeping the other slots in order. A product file fills the slots
+     * from the first one on, so these are the only layouts it can hold, and the search only tries layouts that can be
+     * written as they were scored.
+     *
+     * @param layout The layout, changed in place.
+     * @return The layout.
+     */
+    static int[] compact(int[] layout) {
+        int filled = 0;
+        for (int kind : layout) {
+            if (kind >= 0) {
+                layout[filled++] = kind;
+            }
+        }
+        Arrays.fill(layout, filled, layout.length, -1);
+        return layout;
+    }
+
+    /**
+     * Gets the layout closest to what a product file loads: the kind of every slot it fills, in order.
+     *
+     * @param productLines The lines of the product file.
+     * @return The kind index of every slot, -1 for the slots it leaves empty.
+     */
+    int[] layoutOf(String[] productLines) {
+        return layoutOf(load(productLines));
+    }
+
+    /**
+     * Gets the layout of a loaded machine: the kind of every slot.
+     *
+     * @param machine The machine.
+     * @return The kind index of every slot, -1 for the empty slots and the ones holding a product of no kind.
+     */
+    int[] layoutOf(GMMMachine machine) {
+        int[] layout = new int[capacity];
+        Arrays.fill(layout, -1);
+        for (int slot = machine.nextOccupied(0); slot >= 0; slot = machine.nextOccupied(slot + 1)) {
+            String name = machine.getProduct(slot).getName();
+            for (int kind = 0; kind < kinds.length && layout[slot] < 0; kind++) {
+                if (kinds[kind].getName().equals(name)) {
+                    layout[slot] = kind;
+                }
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Loads a product file into a new machine, the way {@link Main} does.
+     *
+     * @param productLines The lines of the product file.
+     * @return The loaded machine.
+     */
+    GMMMachine load(String[] productLines) {
+        GMMMachine machine = newMachine();
+        LineParser parser = new LineParser(token -> { });
+        for (String line : productLines) {
+            if (machine.fill(parser.parseProduct(line)) == -1) {
+                break;
+            }
+        }
+        return machine;
+    }
+
+    /**
+     * Loads a layout into a new machine, filling every slot of the layout up to its capacity at its own index.
+     *
+     * @param layout The kind index of every slot; slots of kind -1 are left empty.
+     * @return The loaded machine.
+     */
+    GMMMachine load(int[] layout) {
+        GMMMachine machine = newMachine();
+        for (int slot = 0; slot < layout.length; slot++) {
+            if (layout[slot] < 0) {
+                continue;
+            }
+            Product product = kinds[layout[slot]].copy(); // The slot holds its own object, as after a fill
+            for (int unit = 0; unit < GMMMachine.SLOT_CAPACITY; unit++) {
+                machine.loadInto(slot, product);
+            }
+        }
+        return machine;
+    }
+
+    /**
+     * Replays the history against a loaded machine, restocking it every period. The machine itself is not changed.
+     *
+     * @param loaded The machine as the layout fills it.
+     * @return The outcome of the replay.
+     */
+    Score evaluate(GMMMachine loaded) {
+        Score score = new Score();
+        SaleResult result = new SaleResult();
+        int length = period == 0 ? Math.max(1, history.length) : period;
+        for (int from = 0; from < history.length; from += length) {
+            GMMMachine machine = loaded.copy();
+            for (int i = from; i < Math.min(history.length, from + length); i++) {
+                score.record(machine.sell(history[i], result));
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Writes a layout as a product file: the line of its kind once for every unit of every slot. A product file cannot
+     * leave a slot empty before a filled one, so the file loads the layout as given only if its empty slots are at the
+     * end, as in the layouts of {@link #search}; otherwise the slots after an empty slot move up.
+     *
+     * @param layout The kind index of every slot.
+     * @return The content of the product file.
+     */
+    String productFile(int[] layout) {
+        StringBuilder file = new StringBuilder();
+        for (int kind : layout) {
+            if (kind < 0) {
+                continue;
+            }
+            for (int unit = 0; unit < GMMMachine.SLOT_CAPACITY; unit++) {
+                file.append(file.length() == 0 ? "" : "\n").append(kindLines[kind]);
+            }
+        }
+        return file.toString();
+    }
+
+    private GMMMachine newMachine() {
+        GMMMachine machine = new GMMMachine();
+        machine.setClosestMatch(closestMatch);
+        return machine;
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+
+/**
+ * Writes the messages of a sale in the format of the output file.
+ * The text is appended piece by piece, so writing into a reused StringBuilder or a buffered writer builds no
+ * intermediate strings.
+ */
+final class SaleFormatter {
+    private SaleFormatter() {
+    }
+
+    /**
+     * Appends the messages of a sale.
+     *
+     * @param result The outcome of the sale.
+     * @param out    Where the messages are written.
+     * @throws IOException If the destination cannot be written.
+     */
+    static void format(SaleResult result, Appendable out) throws IOException {
+        switch (result.getStatus()) {
+            case PURCHASED:
+                out.append("PURCHASE: You have bought one ").append(result.getProduct().getName()).append('\n');
+                break;
+            case INVALID_NUMBER:
+                out.append("INFO: Number cannot be accepted. Please try again with another number.\n");
+                break;
+            case INSUFFICIENT_MONEY:
+                out.append("INFO: Insufficient money, try again with more money.\n");
+                break;
+            case EMPTY_SLOT:
+                out.append("INFO: This slot is empty, your money will be returned.\n");
+                break;
+            case NOT_FOUND:
+                out.append("INFO: Product not found, your money will be returned.\n");
+                break;
+        }
+        out.append("RETURN: Returning your change: ");
+        appendInt(result.getChange(), out);
+        out.append(" TL\n");
+    }
+
+    /**
+     * Appends the decimal digits of a number without creating a string.
+     *
+     * @param value The number.
+     * @param out   Where the digits are written.
+     * @throws IOException If the destination cannot be written.
+     */
+    static void appendInt(int value, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value); // Already allocation free
+            return;
+        }
+        if (value < 0) {
+            out.append('-');
+        } else {
+            value = -value; // Work with negatives so Integer.MIN_VALUE fits
+        }
+        int divisor = -1;
+        while (value / 10 <= divisor) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            out.append((char) ('0' + value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * The outcome of one sale: its status, the slot and the product that were sold if any, and the money returned.
+ * A result is mutable so a caller processing many purchases can reuse one object instead of allocating per sale.
+ * Money is kept exactly in minor units (see {@link Money}); the change handed back is the whole TL of it.
+ */
+class SaleResult {
+    private SaleStatus status;
+    private int slot = -1;
+    private Product product;
+    private long paid; // Money inserted, in minor units
+    private long change; // Change due, in minor units
+
+    /**
+     * Records a successful sale.
+     *
+     * @param slot     The slot index in row-major order the product was taken from.
+     * @param product  The product that was sold.
+     * @param purchase The purchase, whose money pays for the product.
+     * @return This result.
+     */
+    SaleResult purchased(int slot, Product product, Purchase purchase) {
+        this.status = SaleStatus.PURCHASED;
+        this.slot = slot;
+        this.product = product;
+        this.paid = purchase.getMoneyMinor();
+        this.change = Money.subtract(paid, product.getPriceMinor());
+        return this;
+    }
+
+    /**
+     * Records a sale that did not happen, so all the money is returned.
+     *
+     * @param status   The reason of the refund.
+     * @param purchase The purchase whose money is returned.
+     * @return This result.
+     */
+    SaleResult refund(SaleStatus status, Purchase purchase) {
+        return refund(status, -1, null, purchase);
+    }
+
+    /**
+     * Records a sale that was refused at a given slot, so all the money is returned.
+     *
+     * @param status   The reason of the refund.
+     * @param slot     The slot index in row-major order the sale was refused at, or -1 if there is none.
+     * @param product  The product in that slot, or null if there is none.
+     * @param purchase The purchase whose money is returned.
+     * @return This result.
+     */
+    SaleResult refund(SaleStatus status, int slot, Product product, Purchase purchase) {
+        this.status = status;
+        this.slot = slot;
+        this.product = product;
+        this.paid = purchase.getMoneyMinor();
+        this.change = paid;
+        return this;
+    }
+
+    /**
+     * Gets the status of the sale.
+     *
+     * @return The status of the sale.
+     */
+    public SaleStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks whether a product was sold.
+     *
+     * @return True if the sale was successful, false otherwise.
+     */
+    public boolean isPurchased() {
+        return status == SaleStatus.PURCHASED;
+    }
+
+    /**
+     * Gets the slot the product was sold from, or the slot the sale was refused at.
+     *
+     * @return The slot index in row-major order, or -1 if no slot was involved.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Gets the product that was sold, or the one that could not be sold.
+     *
+     * @return The product, or null if no slot was involved.
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Gets the money returned to the customer. The machine only returns whole TL, so the kurus of the change due stay
+     * in the machine.
+     *
+     * @return The change in TL.
+     */
+    public int getChange() {
+        return Money.toMajor(change);
+    }
+
+    /**
+     * Gets the exact change due to the customer, before it is cut to whole TL.
+     *
+     * @return The change due in minor units.
+     */
+    public long getChangeMinor() {
+        return change;
+    }
+
+    /**
+     * Gets the money the customer inserted.
+     *
+     * @return The money inserted in minor units.
+     */
+    public long getPaidMinor() {
+        return paid;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * The possible outcomes of a sale.
+ */
+enum SaleStatus {
+    /** The product was sold and the change is returned. */
+    PURCHASED,
+    /** The slot number is out of the machine, the money is returned. */
+    INVALID_NUMBER,
+    /** The loaded money is less than the price, the money is returned. */
+    INSUFFICIENT_MONEY,
+    /** The chosen slot has nothing to sell, the money is returned. */
+    EMPTY_SLOT,
+    /** No product matches the nutritional value, the money is returned. */
+    NOT_FOUND
+}
@@ -0,0 +1,78 @@
+import java.util.Arrays;
+
+/**
+ * The SlotQueue class is a priority queue of slot indices that always gives the smallest one first,
+ * which is the slot the row-major scan of the machine would reach first.
+ * It is a binary heap over a primitive array, so no boxing happens on the fill path.
+ */
+class SlotQueue {
+    private int[] heap = new int[4];
+    private int size;
+
+    /**
+     * Creates a queue holding the same slots as this one.
+     *
+     * @return The copy.
+     */
+    SlotQueue copy() {
+        SlotQueue copy = new SlotQueue();
+        copy.heap = heap.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Checks whether the queue is empty.
+     *
+     * @return True if the queue has no slots, false otherwise.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the smallest slot index without removing it.
+     *
+     * @return The smallest slot index in the queue, or -1 if the queue is empty.
+     */
+    int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * Adds a slot index to the queue.
+     *
+     * @param slot The slot index in row-major order.
+     */
+    void add(int slot) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int i = size++;
+        while (i > 0 && heap[(i - 1) / 2] > slot) { // Moves bigger parents down until the slot fits
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * Removes the smallest slot index from the queue.
+     */
+    void poll() {
+        int last = heap[--size];
+        int i = 0;
+        while (2 * i + 1 < size) { // Moves smaller children up until the last slot fits
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * The SlotStore interface describes where a machine keeps the products of its slots.
+ * Slots are addressed by their index in row-major order, from 0 to {@code capacity() - 1}.
+ */
+interface SlotStore {
+    /**
+     * Gets the number of slots in the store.
+     *
+     * @return The number of slots.
+     */
+    int capacity();
+
+    /**
+     * Gets the product in a slot.
+     *
+     * @param slot The slot index in row-major order.
+     * @return The product in the slot, or null if the slot is empty.
+     */
+    Product get(int slot);
+
+    /**
+     * Puts a product into a slot, replacing what was there.
+     *
+     * @param slot    The slot index in row-major order.
+     * @param product The product to put, or null to empty the slot.
+     */
+    void set(int slot, Product product);
+
+    /**
+     * Creates a store holding the same products in the same slots. Changing the slots of one store does not change
+     * the other, but the copy may hold the very same product objects, see {@link #sharesProducts()}.
+     *
+     * @return The copy.
+     */
+    SlotStore copy();
+
+    /**
+     * Tells whether the copies of this store hold the same product objects as this store, so that changing the
+     * quantity of a product through one store changes it in the other as well.
+     *
+     * @return True if products are shared with copies, false if every copy has its own.
+     */
+    default boolean sharesProducts() {
+        return true;
+    }
+
+    /**
+     * Checks whether a slot is empty.
+     *
+     * @param slot The slot index in row-major order.
+     * @return True if the slot holds no product, false otherwise.
+     */
+    default boolean isEmpty(int slot) {
+        return get(slot) == null;
+    }
+
+    /**
+     * Gets the quantity of the product in a slot.
+     *
+     * @param slot The slot index in row-major order, which must not be empty.
+     * @return The quantity of the product.
+     */
+    default int quantity(int slot) {
+        return get(slot).getQuantity();
+    }
+
+    /**
+     * Gets the price of the product in a slot.
+     *
+     * @param slot The slot index in row-major order, which must not be empty.
+     * @return The price of the product in minor units.
+     */
+    default long price(int slot) {
+        return get(slot).getPriceMinor();
+    }
+
+    /**
+     * Gets a nutritional value of the product in a slot.
+     *
+     * @param slot     The slot index in row-major order, which must not be empty.
+     * @param nutrient The nutrient whose value is wanted.
+     * @return The value of the nutrient in the product.
+     */
+    default double value(int slot, Nutrient nutrient) {
+        return nutrient.valueOf(get(slot));
+    }
+}
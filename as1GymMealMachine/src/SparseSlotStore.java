@@ -0,0 +1,126 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The SparseSlotStore class keeps only the filled slots, in an open addressing hash table keyed by slot index.
+ * Memory use grows with the number of filled slots instead of the size of the machine.
+ */
+class SparseSlotStore implements SlotStore {
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    private int[] keys;
+    private Product[] values;
+    private int size;
+
+    /**
+     * Constructs an empty store with the given number of slots.
+     *
+     * @param capacity The number of slots.
+     */
+    SparseSlotStore(int capacity) {
+        this.capacity = capacity;
+        keys = new int[16];
+        values = new Product[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public Product get(int slot) {
+        Objects.checkIndex(slot, capacity);
+        int mask = keys.length - 1;
+        for (int i = hash(slot) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == slot) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void set(int slot, Product product) {
+        Objects.checkIndex(slot, capacity);
+        if (product == null) {
+            remove(slot);
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = hash(slot) & mask;
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == slot) {
+                values[i] = product;
+                return;
+            }
+        }
+        keys[i] = slot;
+        values[i] = product;
+        if (++size * 2 > keys.length) { // Keeps the table at most half full
+            resize();
+        }
+    }
+
+    @Override
+    public SlotStore copy() {
+        SparseSlotStore copy = new SparseSlotStore(capacity);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Removes a slot from the table, shifting back the entries of its probe chain so no tombstones are left.
+     */
+    private void remove(int slot) {
+        int mask = keys.length - 1;
+        int i = hash(slot) & mask;
+        while (keys[i] != slot) {
+            if (keys[i] == EMPTY) {
+                return; // Slot is already empty
+            }
+            i = (i + 1) & mask;
+        }
+        size--;
+        int hole = i;
+        for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            // Moves the entry into the hole if the hole lies on its way from its home position
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Product[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Product[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = hash(oldKeys[i]) & mask;
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int slot) {
+        int h = slot * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
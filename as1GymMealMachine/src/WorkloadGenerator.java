@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The WorkloadGenerator class writes product and purchase files in the format {@link Main} reads, of any size and
+ * always the same for the same seed and settings. Products are drawn from a fixed set of kinds; purchases follow a
+ * configurable mix of choices, and their nutrient values either fall near the values of a stocked kind or far from all
+ * of them. The money of a purchase either covers every price or none, and some NUMBER purchases ask for a slot beyond
+ * the machine. Lines are streamed to the files, so memory use does not depend on their size.
+ */
+public class WorkloadGenerator {
+    private static final double TOLERANCE = 5; // The tolerance of nutrient purchases in the machine
+    private static final int[] NOTES = {1, 5, 10, 20, 50, 100, 200};
+
+    private final long seed;
+    private int kinds = 8;
+    private int slots = 24;
+    private String[] choices = {"NUMBER", "PROTEIN", "CARB", "FAT", "CALORIE", "SUGAR"};
+    private int[] weights = {30, 20, 20, 10, 15, 5};
+    private double missRatio = 0.2;
+    private double poorRatio = 0.1;
+    private double invalidNumberRatio = 0.05;
+    private Product[] products; // The kinds, created on first use
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed The seed of every random choice; the same seed and settings give the same files.
+     */
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * The main method of the generator.
+     *
+     * @param args Command-line arguments. Expects the product file path, the purchase file path and the number of
+     * purchase lines. Optional arguments: "--seed=N", "--products=N" for the number of product lines (240 by default),
+     * "--kinds=N" for the number of different products, "--slots=N" for the number of slots of the machine,
+     * "--mix=CHOICE:WEIGHT,..." for the mix of choices, where a choice the machine does not know is written as is,
+     * "--miss=R" for the share of nutrient purchases far from every product, "--poor=R" for the share of purchases
+     * whose money covers no price and "--invalid=R" for the share of NUMBER purchases beyond the last slot.
+     */
+    public static void main(String[] args) {
+        long seed = 42;
+        long productLines = 240;
+        String[] settings = new String[args.length];
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("--seed=")) {
+                seed = Long.parseLong(args[i].substring("--seed=".length()));
+            } else if (args[i].startsWith("--products=")) {
+                productLines = Long.parseLong(args[i].substring("--products=".length()));
+            } else {
+                settings[i] = args[i];
+            }
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        for (String setting : settings) {
+            if (setting == null) {
+                continue;
+            }
+            String value = setting.substring(setting.indexOf('=') + 1);
+            if (setting.startsWith("--kinds=")) {
+                generator.setKinds(Integer.parseInt(value));
+            } else if (setting.startsWith("--slots=")) {
+                generator.setSlots(Integer.parseInt(value));
+            } else if (setting.startsWith("--mix=")) {
+                generator.setChoiceMix(value);
+            } else if (setting.startsWith("--miss=")) {
+                generator.setMissRatio(Double.parseDouble(value));
+            } else if (setting.startsWith("--poor=")) {
+                generator.setPoorRatio(Double.parseDouble(value));
+            } else if (setting.startsWith("--invalid=")) {
+                generator.setInvalidNumberRatio(Double.parseDouble(value));
+            } else {
+                System.out.println("INFO: Unknown option: " + setting);
+            }
+        }
+        try {
+            generator.writeProducts(args[0], productLines);
+            generator.writePurchases(args[1], Long.parseLong(args[2]));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the number of different products.
+     *
+     * @param kinds The number of kinds, at least 1.
+     */
+    public void setKinds(int kinds) {
+        if (kinds < 1) {
+            throw new IllegalArgumentException("At least one kind of product is needed, not " + kinds);
+        }
+        this.kinds = kinds;
+        products = null;
+    }
+
+    /**
+     * Sets the number of slots of the machine the purchases are meant for, which bounds the valid NUMBER values.
+     *
+     * @param slots The number of slots, at least 1.
+     */
+    public void setSlots(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("The machine needs at least one slot, not " + slots);
+        }
+        this.slots = slots;
+    }
+
+    /**
+     * Sets the mix of choices of the purchases.
+     *
+     * @param mix The choices with their weights, such as "NUMBER:3,PROTEIN:1". A choice the machine does not know,
+     *            such as "SUGAR", is written as is and its purchases find nothing.
+     */
+    public void setChoiceMix(String mix) {
+        String[] entries = mix.split(",");
+        String[] names = new String[entries.length];
+        int[] parsedWeights = new int[entries.length];
+        int total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            int colon = entries[i].indexOf(':');
+            names[i] = colon < 0 ? entries[i] : entries[i].substring(0, colon);
+            parsedWeights[i] = colon < 0 ? 1 : Integer.parseInt(entries[i].substring(colon + 1));
+            if (names[i].isEmpty() || parsedWeights[i] < 0) {
+                throw new IllegalArgumentException("Invalid choice in the mix: " + entries[i]);
+            }
+            total += parsedWeights[i];
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The mix has no weight: " + mix);
+        }
+        choices = names;
+        weights = parsedWeights;
+    }
+
+    /**
+     * Sets the share of nutrient purchases whose value is far from the value of every product.
+     *
+     * @param missRatio The share, from 0 to 1.
+     */
+    public void setMissRatio(double missRatio) {
+        this.missRatio = checkRatio(missRatio);
+    }
+
+    /**
+     * Sets the share of purchases whose money is less than the cheapest price.
+     *
+     * @param poorRatio The share, from 0 to 1.
+     */
+    public void setPoorRatio(double poorRatio) {
+        this.poorRatio = checkRatio(poorRatio);
+    }
+
+    /**
+     * Sets the share of NUMBER purchases that ask for a slot beyond the last one.
+     *
+     * @param invalidNumberRatio The share, from 0 to 1.
+     */
+    public void setInvalidNumberRatio(double invalidNumberRatio) {
+        this.invalidNumberRatio = checkRatio(invalidNumberRatio);
+    }
+
+    private static double checkRatio(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("A ratio must be between 0 and 1, not " + ratio);
+        }
+        return ratio;
+    }
+
+    /**
+     * Writes a product file: "name TAB price TAB protein carbohydrate fat" on every line.
+     *
+     * @param path  Path to the file.
+     * @param lines The number of lines.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeProducts(String path, long lines) throws IOException {
+        Product[] kinds = products();
+        Random random = new Random(seed * 31 + 1);
+        StringBuilder line = new StringBuilder();
+        try (ChannelFileOutput output = ChannelFileOutput.open(path, false)) {
+            for (long i = 0; i < lines; i++) {
+                Product product = kinds[random.nextInt(kinds.length)];
+                line.setLength(0);
+                line.append(product.getName()).append('\t');
+                appendTenths(line, Math.round(product.getPrice() * 10));
+                line.append('\t').append((int) product.getProtein()).append(' ')
+                        .append((int) product.getCarbohydrate()).append(' ').append((int) product.getFat()).append('\n');
+                output.append(line);
+            }
+        }
+    }
+
+    /**
+     * Writes a purchase file: "type TAB money list TAB choice TAB value" on every line.
+     *
+     * @param path  Path to the file.
+     * @param lines The number of lines.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writePurchases(String path, long lines) throws IOException {
+        Product[] kinds = products();
+        double cheapest = Double.MAX_VALUE;
+        double dearest = 0;
+        for (Product product : kinds) {
+            cheapest = Math.min(cheapest, product.getPrice());
+            dearest = Math.max(dearest, product.getPrice());
+        }
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        Random random = new Random(seed * 31 + 2);
+        StringBuilder line = new StringBuilder();
+        try (ChannelFileOutput output = ChannelFileOutput.open(path, false)) {
+            for (long i = 0; i < lines; i++) {
+                line.setLength(0);
+                line.append("CASH\t");
+                if (random.nextDouble() < poorRatio) {
+                    appendMoney(line, random, 0, (int) Math.ceil(cheapest) - 1); // Less than every price
+                } else {
+                    appendMoney(line, random, (int) Math.ceil(dearest), (int) Math.ceil(dearest) * 2); // Any price
+                }
+                String choice = pick(random, totalWeight);
+                line.append('\t').append(choice).append('\t');
+                Nutrient nutrient = nutrientOf(choice);
+                if (choice.equals("NUMBER")) {
+                    if (random.nextDouble() < invalidNumberRatio) {
+                        line.append(slots + random.nextInt(slots)); // The first invalid value is the number of slots
+                    } else {
+                        line.append(random.nextInt(slots));
+                    }
+                } else if (nutrient == null) {
+                    appendTenths(line, random.nextInt(1000)); // The machine does not know the choice
+                } else if (random.nextDouble() < missRatio) {
+                    double highest = 0;
+                    for (Product product : kinds) {
+                        highest = Math.max(highest, nutrient.valueOf(product));
+                    }
+                    appendTenths(line, (long) Math.ceil((highest + TOLERANCE) * 10) + 1 + random.nextInt(1000));
+                } else {
+                    // Near a product: within 4.5 of its value, so rounding to tenths stays within the tolerance
+                    double value = nutrient.valueOf(kinds[random.nextInt(kinds.length)]);
+                    appendTenths(line, Math.round(value * 10) - 45 + random.nextInt(91));
+                }
+                line.append('\n');
+                output.append(line);
+            }
+        }
+    }
+
+    /**
+     * Creates the kinds of products, with prices from 5 to 50 in halves and whole nutrient values.
+     */
+    private Product[] products() {
+        if (products == null) {
+            Random random = new Random(seed);
+            products = new Product[kinds];
+            for (int i = 0; i < kinds; i++) {
+                products[i] = new Product("Meal" + i, 5 + random.nextInt(91) / 2.0, random.nextInt(41),
+                        random.nextInt(61), random.nextInt(31));
+            }
+        }
+        return products;
+    }
+
+    private String pick(Random random, int totalWeight) {
+        int ticket = random.nextInt(totalWeight);
+        for (int i = 0; i < choices.length; i++) {
+            ticket -= weights[i];
+            if (ticket < 0) {
+                return choices[i];
+            }
+        }
+        return choices[choices.length - 1];
+    }
+
+    private static Nutrient nutrientOf(String choice) {
+        for (Nutrient nutrient : Nutrient.values()) {
+            if (nutrient.name().equals(choice)) {
+                return nutrient;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends banknotes adding up to an amount between the bounds, largest first.
+     */
+    private static void appendMoney(StringBuilder line, Random random, int low, int high) {
+        int amount = low + random.nextInt(Math.max(1, high - low + 1));
+        if (amount <= 0) {
+            line.append(0);
+            return;
+        }
+        boolean first = true;
+        for (int i = NOTES.length - 1; i >= 0; i--) {
+            for (; amount >= NOTES[i]; amount -= NOTES[i]) {
+                line.append(first ? "" : " ").append(NOTES[i]);
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * Appends a number of tenths as a decimal number, with no fraction if it is whole.
+     */
+    private static void appendTenths(StringBuilder line, long tenths) {
+        if (tenths < 0) {
+            line.append('-');
+            tenths = -tenths;
+        }
+        line.append(tenths / 10);
+        if (tenths % 10 != 0) {
+            line.append('.').append(tenths % 10);
+        }
+    }
+}